@@ -0,0 +1,497 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Runs every analysis mode over the corpus, compares the four colors each picks against the
+ * golden colors stored for the reference mode, and prints per mode how long it took and how
+ * far its colors drifted, in CIEDE2000 Delta E:
+ * <pre>
+ * ./gradlew :benchmark:accuracy -PaccuracyArgs='--tolerance 2'
+ * </pre>
+ * A mode passes when none of its colors is further than the tolerance from the golden one.
+ * The exit status is 1 if the reference mode fails, that is if the analysis itself changed,
+ * or with {@code --strict} if any mode does. After a deliberate change to the analysis,
+ * {@code --update} stores the reference mode's colors as the new golden ones.
+ * {@code ./gradlew check} runs the report as well.
+ */
+public final class AccuracyReport {
+    private static final int WARMUP_RUNS = 200;
+    private static final int MEASURED_RUNS = 200;
+
+    private final float[] mLab = new float[2 * PerceptualMath.LAB_SIZE];
+
+    /**
+     * One way of analyzing an image, writing the background, primary, secondary and detail
+     * colors to {@code colors}.
+     */
+    private abstract static class Mode {
+        final String mName;
+
+        Mode(String name) {
+            mName = name;
+        }
+
+        /**
+         * Sets up what {@link #analyze} builds on, outside of the timed part.
+         */
+        void prepare(Image image) {
+        }
+
+        abstract void analyze(Image image, int[] colors);
+    }
+
+    /**
+     * A sample grid of an image.
+     */
+    private static final class Grid {
+        final int[] mPixels;
+        final int mWidth;
+        final int mHeight;
+
+        Grid(int[] pixels, int width, int height) {
+            mPixels = pixels;
+            mWidth = width;
+            mHeight = height;
+        }
+    }
+
+    private static final class Image {
+        final String mName;
+        final BufferedImage mSource;
+        final int[] mPixels;
+        final int mWidth;
+        final int mHeight;
+        // sampled like ColorArt does by default, at a few sample sizes
+        final Map<Integer, int[]> mSamples = new HashMap<Integer, int[]>();
+        // sampled like the other Sampling strategies and SubsampledDecoder, by mode name
+        final Map<String, Grid> mGrids = new HashMap<String, Grid>();
+        // the 120 x 120 sample with a band of rows changed, the frame before it in a sequence
+        final int[] mPreviousFrame;
+
+        Image(String name, BufferedImage source) {
+            mName = name;
+            mSource = source;
+            mWidth = source.getWidth();
+            mHeight = source.getHeight();
+            mPixels = source.getRGB(0, 0, mWidth, mHeight, null, 0, mWidth);
+            int size = AnalysisEngine.DEFAULT_SAMPLE_SIZE;
+            mPreviousFrame = sample(size).clone();
+            for (int i = size * size * 8 / 10, end = size * size * 9 / 10; i < end; i++) {
+                mPreviousFrame[i] = ~mPreviousFrame[i] | 0xFF000000;
+            }
+        }
+
+        /**
+         * @return the {@code size x size} grid of {@code Sampling.SCALED}, nearest-neighbour
+         * like {@code Bitmap.createScaledBitmap} without filtering
+         */
+        int[] sample(int size) {
+            int[] sample = mSamples.get(size);
+            if (sample == null) {
+                sample = Corpus.scale(mPixels, mWidth, mHeight, size);
+                mSamples.put(size, sample);
+            }
+            return sample;
+        }
+
+        Grid stride(int size) {
+            String key = "stride " + size;
+            Grid grid = mGrids.get(key);
+            if (grid == null) {
+                int gridWidth = Math.min(size, mWidth);
+                int gridHeight = Math.min(size, mHeight);
+                grid = new Grid(Corpus.stride(mPixels, mWidth, mHeight, gridWidth, gridHeight),
+                        gridWidth, gridHeight);
+                mGrids.put(key, grid);
+            }
+            return grid;
+        }
+
+        Grid stratified(int pixelBudget) {
+            String key = "stratified " + pixelBudget;
+            Grid grid = mGrids.get(key);
+            if (grid == null) {
+                int gridSize = Math.max(1, (int) Math.sqrt(pixelBudget));
+                int gridWidth = Math.min(gridSize, mWidth);
+                int gridHeight = Math.min(gridSize, mHeight);
+                grid = new Grid(Corpus.stratified(mPixels, mWidth, mHeight, gridWidth, gridHeight),
+                        gridWidth, gridHeight);
+                mGrids.put(key, grid);
+            }
+            return grid;
+        }
+
+        /**
+         * @return the {@code size x size} grid of {@code Sampling.SCALED}, out of the image
+         * decoded with the {@code inSampleSize} {@code SubsampledDecoder} would pick
+         */
+        Grid subsampled(int size) {
+            String key = "subsampled " + size;
+            Grid grid = mGrids.get(key);
+            if (grid == null) {
+                int smallerSide = Math.min(mWidth, mHeight);
+                int inSampleSize = 1;
+                while (smallerSide / (inSampleSize * 2) >= size) {
+                    inSampleSize *= 2;
+                }
+                int[] decoded = Corpus.subsample(mPixels, mWidth, mHeight, inSampleSize);
+                grid = new Grid(Corpus.scale(decoded, mWidth / inSampleSize, mHeight / inSampleSize, size),
+                        size, size);
+                mGrids.put(key, grid);
+            }
+            return grid;
+        }
+    }
+
+    private static List<Mode> modes() {
+        final int size = AnalysisEngine.DEFAULT_SAMPLE_SIZE;
+        List<Mode> modes = new ArrayList<Mode>();
+        // the first mode is the reference the golden colors come from
+        modes.add(new EngineMode("reference", new AnalysisEngine(), size));
+        modes.add(new EngineMode("sample 60", new AnalysisEngine(), 60));
+        modes.add(new EngineMode("sample 240", new AnalysisEngine(), 240));
+
+        final AnalysisEngine strideEngine = new AnalysisEngine();
+        modes.add(new Mode("stride") {
+            @Override
+            void analyze(Image image, int[] colors) {
+                analyzeGrid(strideEngine, image.stride(size), colors);
+            }
+        });
+        final AnalysisEngine stratifiedEngine = new AnalysisEngine();
+        modes.add(new Mode("stratified") {
+            @Override
+            void analyze(Image image, int[] colors) {
+                analyzeGrid(stratifiedEngine, image.stratified(size * size), colors);
+            }
+        });
+        final AnalysisEngine subsampledEngine = new AnalysisEngine();
+        modes.add(new Mode("subsampled") {
+            @Override
+            void analyze(Image image, int[] colors) {
+                analyzeGrid(subsampledEngine, image.subsampled(size), colors);
+            }
+        });
+
+        AnalysisEngine engine = new AnalysisEngine();
+        engine.setMaxTextCandidates(64);
+        modes.add(new EngineMode("quantize 64", engine, size));
+        engine = new AnalysisEngine();
+        engine.setMaxTextCandidates(16);
+        modes.add(new EngineMode("quantize 16", engine, size));
+
+        engine = new AnalysisEngine();
+        engine.setParallelThreshold(1);
+        modes.add(new EngineMode("parallel", engine, size));
+
+        engine = new AnalysisEngine();
+        engine.setPaletteSize(16);
+        modes.add(new EngineMode("palette 16", engine, size));
+
+        engine = new AnalysisEngine();
+        engine.setMetrics(new ColorArtMetrics());
+        modes.add(new EngineMode("metrics", engine, size));
+
+        engine = new AnalysisEngine();
+        engine.setDistance(ColorDistance.CIEDE2000);
+        modes.add(new EngineMode("ciede2000", engine, size));
+
+        engine = new AnalysisEngine();
+        engine.setContrast(ColorContrast.WCAG_AA_LARGE);
+        modes.add(new EngineMode("wcag aa large", engine, size));
+
+        engine = new AnalysisEngine();
+        engine.setTrimBorders(true);
+        modes.add(new EngineMode("trim borders", engine, size));
+
+        engine = new AnalysisEngine();
+        engine.setRegion(0.1f, 0.1f, 0.9f, 0.9f);
+        modes.add(new EngineMode("region", engine, size));
+
+        engine = new AnalysisEngine();
+        engine.setMinAlpha(128);
+        modes.add(new EngineMode("alpha cutoff", engine, size));
+
+        final AnalysisEngine lazyEngine = new AnalysisEngine();
+        modes.add(new Mode("lazy") {
+            @Override
+            void analyze(Image image, int[] colors) {
+                int[] pixels = image.sample(size);
+                int backgroundColor = lazyEngine.findLeftEdgeColor(pixels, size, size);
+                lazyEngine.analyze(pixels, size, size, backgroundColor);
+                read(lazyEngine, colors);
+            }
+        });
+
+        final AnalysisEngine frameEngine = new AnalysisEngine();
+        modes.add(new Mode("frame") {
+            @Override
+            void prepare(Image image) {
+                frameEngine.analyzeFrame(image.mPreviousFrame, size, size);
+            }
+
+            @Override
+            void analyze(Image image, int[] colors) {
+                // only the incremental update from the previous frame is timed
+                frameEngine.analyzeFrame(image.sample(size), size, size);
+                read(frameEngine, colors);
+            }
+        });
+
+        final ColorArtRasterAnalyzer rasterAnalyzer = new ColorArtRasterAnalyzer.Builder().build();
+        modes.add(new Mode("raster") {
+            @Override
+            void analyze(Image image, int[] colors) {
+                ColorArtResult result = rasterAnalyzer.analyze(image.mSource);
+                colors[0] = result.getBackgroundColor();
+                colors[1] = result.getPrimaryColor();
+                colors[2] = result.getSecondaryColor();
+                colors[3] = result.getDetailColor();
+            }
+        });
+        return modes;
+    }
+
+    private static final class EngineMode extends Mode {
+        private final AnalysisEngine mEngine;
+        private final int mSampleSize;
+
+        EngineMode(String name, AnalysisEngine engine, int sampleSize) {
+            super(name);
+            mEngine = engine;
+            mSampleSize = sampleSize;
+        }
+
+        @Override
+        void analyze(Image image, int[] colors) {
+            mEngine.analyze(image.sample(mSampleSize), mSampleSize, mSampleSize);
+            read(mEngine, colors);
+        }
+    }
+
+    private static void analyzeGrid(AnalysisEngine engine, Grid grid, int[] colors) {
+        engine.analyze(grid.mPixels, grid.mWidth, grid.mHeight);
+        read(engine, colors);
+    }
+
+    private static void read(AnalysisEngine engine, int[] colors) {
+        colors[0] = engine.getBackgroundColor();
+        colors[1] = engine.getPrimaryColor();
+        colors[2] = engine.getSecondaryColor();
+        colors[3] = engine.getDetailColor();
+    }
+
+    private float deltaE(int colorA, int colorB) {
+        PerceptualMath.toLab(colorA, mLab, 0);
+        PerceptualMath.toLab(colorB, mLab, PerceptualMath.LAB_SIZE);
+        return PerceptualMath.deltaE2000(mLab, 0, PerceptualMath.LAB_SIZE);
+    }
+
+    /**
+     * @return whether the reference mode, or with {@code strict} every mode, passed
+     */
+    private boolean run(List<Image> images, Map<String, int[]> golden, float tolerance, boolean strict) {
+        System.out.printf(Locale.US, "%d images, tolerance %.2f Delta E (CIEDE2000)%n%n", images.size(), tolerance);
+        System.out.printf(Locale.US, "%-14s %10s %10s %10s %10s %8s  %s%n",
+                "mode", "median us", "p90 us", "mean dE", "max dE", "drifted", "result");
+
+        boolean passed = true;
+        List<Mode> modes = modes();
+        int[] colors = new int[4];
+        long[] nanos = new long[images.size() * MEASURED_RUNS];
+        for (int m = 0; m < modes.size(); m++) {
+            Mode mode = modes.get(m);
+            int timed = 0;
+            double sum = 0;
+            float max = 0;
+            int compared = 0;
+            int drifted = 0;
+            for (Image image : images) {
+                for (int run = 0; run < WARMUP_RUNS; run++) {
+                    mode.prepare(image);
+                    mode.analyze(image, colors);
+                }
+                for (int run = 0; run < MEASURED_RUNS; run++) {
+                    mode.prepare(image);
+                    long start = System.nanoTime();
+                    mode.analyze(image, colors);
+                    nanos[timed++] = System.nanoTime() - start;
+                }
+
+                int[] expected = golden.get(image.mName);
+                if (expected == null) {
+                    continue;
+                }
+                for (int role = 0; role < 4; role++) {
+                    float deltaE = deltaE(expected[role], colors[role]);
+                    sum += deltaE;
+                    max = Math.max(max, deltaE);
+                    compared++;
+                    if (deltaE > tolerance) {
+                        drifted++;
+                    }
+                }
+            }
+
+            Arrays.sort(nanos, 0, timed);
+            boolean modePassed = drifted == 0;
+            if (!modePassed && (m == 0 || strict)) {
+                passed = false;
+            }
+            System.out.printf(Locale.US, "%-14s %10.1f %10.1f %10.3f %10.3f %8s  %s%n",
+                    mode.mName, nanos[timed / 2] / 1000.0, nanos[timed * 9 / 10] / 1000.0,
+                    compared > 0 ? sum / compared : 0, max, drifted + "/" + compared,
+                    compared == 0 ? "no golden colors" : modePassed ? "pass" : "FAIL");
+        }
+        return passed;
+    }
+
+    private static void update(List<Image> images, File goldenFile) throws IOException {
+        Mode reference = modes().get(0);
+        int[] colors = new int[4];
+        Writer out = new OutputStreamWriter(new FileOutputStream(goldenFile), "UTF-8");
+        try {
+            for (Image image : images) {
+                reference.prepare(image);
+                reference.analyze(image, colors);
+                out.write(image.mName);
+                for (int color : colors) {
+                    out.write(String.format(Locale.US, "\t#%08X", color));
+                }
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+        System.out.println("Stored the golden colors of " + images.size() + " images in " + goldenFile);
+    }
+
+    /**
+     * Reads lines of a name and four {@code #AARRGGBB} colors separated by tabs, the format
+     * {@link ColorArtBatchRunner} writes as well.
+     */
+    private static Map<String, int[]> readGolden(File goldenFile) throws IOException {
+        Map<String, int[]> golden = new HashMap<String, int[]>();
+        if (!goldenFile.exists()) {
+            return golden;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(goldenFile), "UTF-8"));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 5) {
+                    throw new IOException("Expected a name and 4 colors: " + line);
+                }
+                int[] colors = new int[4];
+                for (int role = 0; role < 4; role++) {
+                    colors[role] = (int) Long.parseLong(fields[role + 1].substring(1), 16);
+                }
+                golden.put(fields[0], colors);
+            }
+        } finally {
+            in.close();
+        }
+        return golden;
+    }
+
+    private static List<Image> readImages(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Not a directory: " + directory);
+        }
+        Arrays.sort(files);
+        List<Image> images = new ArrayList<Image>();
+        for (File file : files) {
+            String name = file.getName().toLowerCase(Locale.US);
+            if (name.startsWith("ic_")) {
+                // app icons are mostly transparent, their colors only measure the alpha handling
+                continue;
+            }
+            if (name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png")) {
+                BufferedImage image = ImageIO.read(file);
+                if (image == null) {
+                    throw new IOException("Unable to decode " + file);
+                }
+                images.add(new Image(file.getName(), image));
+            }
+        }
+        return images;
+    }
+
+    public static void main(String[] args) throws IOException {
+        File directory = Corpus.directory();
+        File goldenFile = null;
+        float tolerance = 1;
+        boolean strict = false;
+        boolean update = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--tolerance") && i + 1 < args.length) {
+                tolerance = Float.parseFloat(args[++i]);
+            } else if (arg.equals("--corpus") && i + 1 < args.length) {
+                directory = new File(args[++i]);
+            } else if (arg.equals("--golden") && i + 1 < args.length) {
+                goldenFile = new File(args[++i]);
+            } else if (arg.equals("--strict")) {
+                strict = true;
+            } else if (arg.equals("--update")) {
+                update = true;
+            } else {
+                System.err.println("Usage: AccuracyReport [--corpus directory] [--golden file]"
+                        + " [--tolerance deltaE] [--strict] [--update]");
+                System.exit(2);
+            }
+        }
+        if (goldenFile == null) {
+            goldenFile = new File(System.getProperty("colorart.golden", "golden-colors.tsv"));
+        }
+
+        List<Image> images = readImages(directory);
+        if (update) {
+            update(images, goldenFile);
+            return;
+        }
+        Map<String, int[]> golden = readGolden(goldenFile);
+        if (golden.isEmpty()) {
+            System.err.println("No golden colors in " + goldenFile + ", store them with --update first");
+            System.exit(2);
+        }
+        if (!new AccuracyReport().run(images, golden, tolerance, strict)) {
+            System.exit(1);
+        }
+    }
+}
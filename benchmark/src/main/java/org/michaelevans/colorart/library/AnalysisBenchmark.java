@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole analysis and its two stages, per cover and sample size. Sample time mode
+ * reports the latency percentiles, run with {@code -prof gc} for the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalysisBenchmark {
+    @Param({"transatlanticism", "jim_noir", "ping_pong_orchestra", "the_point", "hotel_shampoo", "gimme_fiction"})
+    public String image;
+
+    @Param({"60", "120", "240", "480"})
+    public int sampleSize;
+
+    private int[] mPixels;
+    private AnalysisEngine mEngine;
+    private AnalysisEngine mQuantizingEngine;
+    private AnalysisEngine mParallelEngine;
+    private AnalysisEngine mMeasuredEngine;
+    private AnalysisEngine mPaletteEngine;
+    private AnalysisEngine mFrameEngine;
+    private int[][] mFrames;
+    private int mFrame;
+    private ColorArtMetrics mMetrics;
+
+    @Setup
+    public void setUp() throws IOException {
+        mPixels = Corpus.load(image, sampleSize);
+        mEngine = new AnalysisEngine();
+        mEngine.analyze(mPixels, sampleSize, sampleSize);
+        mQuantizingEngine = new AnalysisEngine();
+        mQuantizingEngine.setMaxTextCandidates(64);
+        mParallelEngine = new AnalysisEngine();
+        mParallelEngine.setParallelThreshold(1);
+        mMeasuredEngine = new AnalysisEngine();
+        mMetrics = new ColorArtMetrics();
+        mMeasuredEngine.setMetrics(mMetrics);
+        mPaletteEngine = new AnalysisEngine();
+        mPaletteEngine.setPaletteSize(16);
+
+        // a tenth of the rows change from one frame to the next, like a caption fading in
+        int[] nextFrame = mPixels.clone();
+        for (int i = sampleSize * sampleSize * 8 / 10, end = sampleSize * sampleSize * 9 / 10; i < end; i++) {
+            nextFrame[i] = ~nextFrame[i] | 0xFF000000;
+        }
+        mFrames = new int[][]{mPixels, nextFrame};
+        mFrameEngine = new AnalysisEngine();
+        mFrameEngine.analyzeFrame(mPixels, sampleSize, sampleSize);
+    }
+
+    @Benchmark
+    public int analyze() {
+        mEngine.analyze(mPixels, sampleSize, sampleSize);
+        return mEngine.getDetailColor();
+    }
+
+    @Benchmark
+    public int analyzeQuantized() {
+        mQuantizingEngine.analyze(mPixels, sampleSize, sampleSize);
+        return mQuantizingEngine.getDetailColor();
+    }
+
+    @Benchmark
+    public int analyzeParallel() {
+        mParallelEngine.analyze(mPixels, sampleSize, sampleSize);
+        return mParallelEngine.getDetailColor();
+    }
+
+    /**
+     * {@link #analyze()} with metrics recorded, for their overhead.
+     */
+    @Benchmark
+    public int analyzeMeasured() {
+        mMetrics.reset();
+        mMeasuredEngine.analyze(mPixels, sampleSize, sampleSize);
+        return mMeasuredEngine.getDetailColor();
+    }
+
+    @Benchmark
+    public ColorArtPalette analyzePalette() {
+        mPaletteEngine.analyze(mPixels, sampleSize, sampleSize);
+        return mPaletteEngine.getPalette();
+    }
+
+    /**
+     * {@link #analyze()} on a frame sequence, updating the histograms of the previous frame.
+     */
+    @Benchmark
+    public int analyzeFrame() {
+        mFrame ^= 1;
+        mFrameEngine.analyzeFrame(mFrames[mFrame], sampleSize, sampleSize);
+        return mFrameEngine.getDetailColor();
+    }
+
+    @Benchmark
+    public int findEdgeColor() {
+        return mEngine.findEdgeColor(mPixels, sampleSize, sampleSize);
+    }
+
+    @Benchmark
+    public int findTextColors() {
+        mEngine.findTextColors(mEngine.getImageColors());
+        return mEngine.getDetailColor();
+    }
+}
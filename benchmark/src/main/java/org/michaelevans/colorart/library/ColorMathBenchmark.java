@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The color predicates over every distinct color of a cover, as the candidate loop in
+ * {@link AnalysisEngine#findTextColors} calls them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColorMathBenchmark {
+    private static final int MINIMUM_SATURATION = ColorMath.toFixed(0.15f);
+
+    private int[] mColors;
+    private int[] mLuminances;
+    private float[] mLab;
+
+    @Setup
+    public void setUp() throws IOException {
+        ColorHistogram histogram = new ColorHistogram();
+        for (int pixel : Corpus.load("hotel_shampoo", 120)) {
+            histogram.add(pixel);
+        }
+        mColors = new int[histogram.size()];
+        mLuminances = new int[histogram.size()];
+        for (int i = 0; i < mColors.length; i++) {
+            mColors[i] = histogram.colorAt(i);
+            mLuminances[i] = ColorMath.luminance(mColors[i]);
+        }
+        mLab = new float[mColors.length * PerceptualMath.LAB_SIZE];
+        for (int i = 0; i < mColors.length; i++) {
+            PerceptualMath.toLab(mColors[i], mLab, i * PerceptualMath.LAB_SIZE);
+        }
+    }
+
+    @Benchmark
+    public void withMinimumSaturation(Blackhole blackhole) {
+        for (int color : mColors) {
+            blackhole.consume(ColorMath.withMinimumSaturation(color, MINIMUM_SATURATION));
+        }
+    }
+
+    @Benchmark
+    public void isDark(Blackhole blackhole) {
+        for (int color : mColors) {
+            blackhole.consume(ColorMath.isDark(ColorMath.luminance(color)));
+        }
+    }
+
+    @Benchmark
+    public void isContrasting(Blackhole blackhole) {
+        int background = mLuminances[0];
+        for (int luminance : mLuminances) {
+            blackhole.consume(ColorMath.isContrasting(luminance, background));
+        }
+    }
+
+    @Benchmark
+    public void isDistinct(Blackhole blackhole) {
+        int primary = mColors[0];
+        for (int color : mColors) {
+            blackhole.consume(ColorMath.isDistinct(primary, color));
+        }
+    }
+
+    @Benchmark
+    public void hasContrastRatio(Blackhole blackhole) {
+        float background = PerceptualMath.linearLuminance(mColors[0]);
+        for (int color : mColors) {
+            blackhole.consume(PerceptualMath.hasContrastRatio(PerceptualMath.linearLuminance(color), background, 4.5f));
+        }
+    }
+
+    @Benchmark
+    public void toLab(Blackhole blackhole) {
+        float[] lab = new float[PerceptualMath.LAB_SIZE];
+        for (int color : mColors) {
+            PerceptualMath.toLab(color, lab, 0);
+            blackhole.consume(lab[0]);
+        }
+    }
+
+    @Benchmark
+    public void deltaE76(Blackhole blackhole) {
+        for (int i = 0; i < mLab.length; i += PerceptualMath.LAB_SIZE) {
+            blackhole.consume(PerceptualMath.deltaE76(mLab, 0, i));
+        }
+    }
+
+    @Benchmark
+    public void deltaE2000(Blackhole blackhole) {
+        for (int i = 0; i < mLab.length; i += PerceptualMath.LAB_SIZE) {
+            blackhole.consume(PerceptualMath.deltaE2000(mLab, 0, i));
+        }
+    }
+
+    @Benchmark
+    public void isBlackOrWhite(Blackhole blackhole) {
+        for (int color : mColors) {
+            blackhole.consume(ColorMath.isBlackOrWhite(color));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The demo app's album covers, decoded once into raw ARGB arrays.
+ */
+final class Corpus {
+    static final String[] IMAGES = {
+            "transatlanticism", "jim_noir", "ping_pong_orchestra",
+            "the_point", "hotel_shampoo", "gimme_fiction"
+    };
+
+    // PixelSampler's seed, so stratified grids pick the same pixels as on Android
+    private static final long STRATIFIED_SEED = 0x436f6c6f72417274L;
+
+    private static final Map<String, int[]> sDecoded = new HashMap<String, int[]>();
+    private static final Map<String, int[]> sSizes = new HashMap<String, int[]>();
+
+    private Corpus() {
+    }
+
+    /**
+     * @return {@code image} scaled to {@code size x size} with nearest-neighbour sampling,
+     * like {@code Bitmap.createScaledBitmap(bitmap, size, size, false)} does
+     */
+    static int[] load(String image, int size) throws IOException {
+        int[] source = decode(image);
+        int[] dimensions = sSizes.get(image);
+        return scale(source, dimensions[0], dimensions[1], size);
+    }
+
+    /**
+     * @return {@code source} scaled to {@code size x size} like {@link #load}
+     */
+    static int[] scale(int[] source, int width, int height, int size) {
+        int[] scaled = new int[size * size];
+        for (int y = 0; y < size; y++) {
+            int sourceRow = (y * height / size) * width;
+            for (int x = 0; x < size; x++) {
+                scaled[y * size + x] = source[sourceRow + x * width / size];
+            }
+        }
+        return scaled;
+    }
+
+    /**
+     * @return the {@code gridWidth x gridHeight} grid {@code PixelSampler} reads for
+     * {@code Sampling.STRIDE}
+     */
+    static int[] stride(int[] source, int width, int height, int gridWidth, int gridHeight) {
+        int[] grid = new int[gridWidth * gridHeight];
+        for (int y = 0; y < gridHeight; y++) {
+            int sourceRow = (y * height / gridHeight) * width;
+            for (int x = 0; x < gridWidth; x++) {
+                grid[y * gridWidth + x] = source[sourceRow + x * width / gridWidth];
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * @return the {@code gridWidth x gridHeight} grid {@code PixelSampler} reads for
+     * {@code Sampling.STRATIFIED}: one random row per row of cells, one random column per
+     * cell except the first, drawn from the same seeded sequence
+     */
+    static int[] stratified(int[] source, int width, int height, int gridWidth, int gridHeight) {
+        int[] grid = new int[gridWidth * gridHeight];
+        Random random = new Random(STRATIFIED_SEED);
+        for (int y = 0; y < gridHeight; y++) {
+            int top = y * height / gridHeight;
+            int sourceRow = (top + random.nextInt((y + 1) * height / gridHeight - top)) * width;
+            grid[y * gridWidth] = source[sourceRow];
+            for (int x = 1; x < gridWidth; x++) {
+                int left = x * width / gridWidth;
+                int cellWidth = (x + 1) * width / gridWidth - left;
+                grid[y * gridWidth + x] = source[sourceRow + left + random.nextInt(cellWidth)];
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * @return every {@code inSampleSize}th pixel of every {@code inSampleSize}th row, the
+     * closest stand-in for {@code BitmapFactory.Options.inSampleSize} on a JVM; Android's
+     * decoders may average the skipped pixels instead
+     */
+    static int[] subsample(int[] source, int width, int height, int inSampleSize) {
+        int subsampledWidth = width / inSampleSize;
+        int subsampledHeight = height / inSampleSize;
+        int[] subsampled = new int[subsampledWidth * subsampledHeight];
+        for (int y = 0; y < subsampledHeight; y++) {
+            int sourceRow = y * inSampleSize * width;
+            for (int x = 0; x < subsampledWidth; x++) {
+                subsampled[y * subsampledWidth + x] = source[sourceRow + x * inSampleSize];
+            }
+        }
+        return subsampled;
+    }
+
+    private static synchronized int[] decode(String image) throws IOException {
+        int[] pixels = sDecoded.get(image);
+        if (pixels == null) {
+            File file = new File(directory(), image + ".jpg");
+            BufferedImage decoded = ImageIO.read(file);
+            if (decoded == null) {
+                throw new IOException("Unable to decode " + file);
+            }
+            int width = decoded.getWidth();
+            int height = decoded.getHeight();
+            pixels = decoded.getRGB(0, 0, width, height, null, 0, width);
+            sDecoded.put(image, pixels);
+            sSizes.put(image, new int[]{width, height});
+        }
+        return pixels;
+    }
+
+    /**
+     * @return the directory with the covers, the {@code colorart.corpus} system property if
+     * it is set
+     */
+    static File directory() {
+        String directory = System.getProperty("colorart.corpus");
+        if (directory == null) {
+            directory = "../demo/src/main/res/drawable-xhdpi";
+        }
+        return new File(directory);
+    }
+}
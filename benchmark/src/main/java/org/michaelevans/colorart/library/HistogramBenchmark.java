@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counting every pixel of a cover, with the primitive histogram and the boxing HashBag it
+ * replaced as a baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistogramBenchmark {
+    @Param({"transatlanticism", "hotel_shampoo"})
+    public String image;
+
+    @Param({"120"})
+    public int sampleSize;
+
+    private int[] mPixels;
+    private final ColorHistogram mHistogram = new ColorHistogram();
+
+    @Setup
+    public void setUp() throws IOException {
+        mPixels = Corpus.load(image, sampleSize);
+    }
+
+    @Benchmark
+    public int colorHistogram() {
+        ColorHistogram histogram = mHistogram;
+        histogram.clear();
+        for (int pixel : mPixels) {
+            histogram.add(pixel);
+        }
+        return histogram.size();
+    }
+
+    @Benchmark
+    public int hashBag() {
+        HashBag<Integer> bag = new HashBag<Integer>();
+        for (int pixel : mPixels) {
+            bag.add(pixel);
+        }
+        return bag.size();
+    }
+}
@@ -0,0 +1,904 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The ColorArt analysis itself, on plain ARGB pixel arrays.
+ * <p>
+ * It has no Android dependencies, so it can be benchmarked and tested on a plain JVM.
+ * An engine owns all of its scratch buffers and reuses them from one image to the next;
+ * it is not thread-safe, keep one per thread.
+ */
+final class AnalysisEngine {
+    private static final double COLOR_THRESHOLD_MINIMUM_PERCENTAGE = 0.01;
+    private static final double EDGE_COLOR_DISCARD_THRESHOLD = 0.3;
+    private static final float MINIMUM_SATURATION_THRESHOLD = 0.15f;
+    private static final int MINIMUM_SATURATION = ColorMath.toFixed(MINIMUM_SATURATION_THRESHOLD);
+
+    static final int DEFAULT_SAMPLE_SIZE = 120;
+    static final int DEFAULT_PARALLEL_THRESHOLD = 512 * 512;
+
+    /**
+     * Bump whenever the analysis changes in a way the thresholds above don't capture.
+     */
+    private static final int ALGORITHM_REVISION = 4;
+
+    static final int ALGORITHM_VERSION = algorithmVersion();
+
+    static final int FALLBACK_PRIMARY = 1;
+    static final int FALLBACK_SECONDARY = 1 << 1;
+    static final int FALLBACK_DETAIL = 1 << 2;
+
+    /**
+     * Image sides. {@code ColorArt.sideOf} maps each {@code FadingImageView.FadeSide} to one.
+     */
+    static final int SIDE_LEFT = 0;
+    static final int SIDE_RIGHT = 1;
+    static final int SIDE_TOP = 2;
+    static final int SIDE_BOTTOM = 3;
+    static final int SIDE_COUNT = 4;
+
+    private static final int LAB_PRIMARY = 0;
+    private static final int LAB_SECONDARY = PerceptualMath.LAB_SIZE;
+    private static final int LAB_CURRENT = 2 * PerceptualMath.LAB_SIZE;
+
+    // the palette is ranked out of at least this many merged colors
+    private static final int PALETTE_BINS = 64;
+
+    // a trimmed border takes up at most this share of the width or height
+    private static final int MAX_BORDER_DIVISOR = 3;
+
+    private static final int BLACK = 0xFF000000;
+    private static final int WHITE = 0xFFFFFFFF;
+
+    private final ColorHistogram mImageColors = new ColorHistogram();
+    private final ColorHistogram mEdgeColors = new ColorHistogram(DEFAULT_SAMPLE_SIZE);
+    private final ColorQuantizer mQuantizer = new ColorQuantizer();
+    private final ColorHistogram mQuantizedColors = new ColorHistogram();
+    private final ColorHeap mCandidates = new ColorHeap();
+    private final ColorHistogram mPaletteColors = new ColorHistogram(PALETTE_BINS);
+    // indexed by SIDE_*, null for sides that have never been tracked; the left side is mEdgeColors
+    private final ColorHistogram[] mSideHistograms = new ColorHistogram[SIDE_COUNT];
+    private final int[] mSideColors = new int[SIDE_COUNT];
+    // how many pixels were counted along each side, indexed by SIDE_*
+    private final int[] mEdgeLengths = new int[SIDE_COUNT];
+    // left, top, right and bottom of the pixels to count, the right and bottom exclusive
+    private final int[] mBounds = new int[4];
+    // per column of the bounds, the index of its first and then of its last counted pixel
+    private int[] mColumnPixels;
+    private ParallelScan mParallelScan;
+    // the last frame of analyzeFrame(), which the histograms describe while mFrameValid
+    private int[] mFrame;
+    private int mFrameWidth;
+    private int mFrameHeight;
+    private int mFrameEdges;
+    private boolean mFrameValid;
+    // null unless someone listens, every measurement is skipped then
+    private ColorArtMetrics mMetrics;
+
+    private int mMaxTextCandidates;
+    private int mParallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private int mEdges = 1 << SIDE_LEFT;
+    private int mPaletteSize;
+    private int mPixelCount;
+    private ColorDistance mDistance = ColorDistance.RGB;
+    private ColorContrast mContrast = ColorContrast.LEGACY;
+    private float mRegionLeft;
+    private float mRegionTop;
+    private float mRegionRight = 1;
+    private float mRegionBottom = 1;
+    private int mMinAlpha;
+    private boolean mTrimBorders;
+    // Lab coordinates of the primary, secondary and current candidate color, in that order
+    private final float[] mLab = new float[3 * PerceptualMath.LAB_SIZE];
+
+    private int mBackgroundColor;
+    private int mPrimaryColor;
+    private int mSecondaryColor;
+    private int mDetailColor;
+    private int mFallbacks;
+
+    /**
+     * Mixes the options that change the colors picked into {@link #ALGORITHM_VERSION}, so
+     * results of different options are never mistaken for each other.
+     *
+     * @param settings every such option, encoded so that its default is 0
+     * @return {@link #ALGORITHM_VERSION} itself if all settings are 0
+     */
+    static int algorithmVersion(int... settings) {
+        long hash = ALGORITHM_VERSION;
+        boolean defaults = true;
+        for (int setting : settings) {
+            hash = 31 * hash + setting;
+            defaults &= setting == 0;
+        }
+        return defaults ? ALGORITHM_VERSION : (int) (hash ^ (hash >>> 32));
+    }
+
+    private static int algorithmVersion() {
+        long hash = ALGORITHM_REVISION;
+        hash = 31 * hash + DEFAULT_SAMPLE_SIZE;
+        hash = 31 * hash + Double.doubleToLongBits(COLOR_THRESHOLD_MINIMUM_PERCENTAGE);
+        hash = 31 * hash + Double.doubleToLongBits(EDGE_COLOR_DISCARD_THRESHOLD);
+        hash = 31 * hash + Float.floatToIntBits(MINIMUM_SATURATION_THRESHOLD);
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Sets how many colors to quantize the image to before picking the text colors, or 0
+     * to use the exact colors.
+     */
+    void setMaxTextCandidates(int maxTextCandidates) {
+        mMaxTextCandidates = maxTextCandidates;
+    }
+
+    /**
+     * Sets the number of pixels from which the histograms are built on several threads.
+     */
+    void setParallelThreshold(int parallelThreshold) {
+        mParallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Sets where to record timings and counts of the following analyses, or null to record
+     * nothing.
+     */
+    void setMetrics(ColorArtMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * Sets how many swatches {@link #getPalette()} returns, or 0 to skip the palette.
+     */
+    void setPaletteSize(int paletteSize) {
+        mPaletteSize = paletteSize;
+    }
+
+    void setDistance(ColorDistance distance) {
+        mDistance = distance;
+    }
+
+    void setContrast(ColorContrast contrast) {
+        mContrast = contrast;
+    }
+
+    /**
+     * Sets which sides to find an edge color for, as a mask of {@code 1 << SIDE_*} bits. The
+     * left side is always included, it provides the background color.
+     */
+    void setEdges(int edges) {
+        mEdges = edges | (1 << SIDE_LEFT);
+    }
+
+    int getEdges() {
+        return mEdges;
+    }
+
+    /**
+     * Restricts the analysis to a part of the image, in fractions of its width and height.
+     * The edges are then the sides of that part.
+     */
+    void setRegion(float left, float top, float right, float bottom) {
+        mRegionLeft = left;
+        mRegionTop = top;
+        mRegionRight = right;
+        mRegionBottom = bottom;
+    }
+
+    /**
+     * Sets the alpha below which pixels are skipped, or 0 to count them all. The edges are
+     * then the first and last counted pixel of each row and column.
+     */
+    void setMinAlpha(int minAlpha) {
+        mMinAlpha = minAlpha;
+    }
+
+    /**
+     * Sets whether to leave uniform bars along the sides of the image, such as letterboxing,
+     * out of the analysis.
+     */
+    void setTrimBorders(boolean trimBorders) {
+        mTrimBorders = trimBorders;
+    }
+
+    /**
+     * @return whether some pixels may be skipped, {@link #findLeftEdgeColor} doesn't apply then
+     */
+    boolean isMasked() {
+        return mRegionLeft > 0 || mRegionTop > 0 || mRegionRight < 1 || mRegionBottom < 1
+                || mMinAlpha > 0 || mTrimBorders;
+    }
+
+    /**
+     * Analyzes {@code width * height} pixels laid out row by row.
+     */
+    void analyze(int[] pixels, int width, int height) {
+        mBackgroundColor = findEdgeColor(pixels, width, height);
+        pickSideColors();
+        pickTextColors();
+    }
+
+    /**
+     * Analyzes {@code width * height} pixels like {@link #analyze}, against a background
+     * color found earlier with {@link #findLeftEdgeColor} instead of detecting it again.
+     */
+    void analyze(int[] pixels, int width, int height, int backgroundColor) {
+        countColors(pixels, width, height);
+        mBackgroundColor = backgroundColor;
+        pickSideColors();
+        pickTextColors();
+    }
+
+    /**
+     * Analyzes the next frame of a sequence like {@link #analyze}. The histograms of the
+     * previous frame are updated with the pixels that changed since, rather than built again,
+     * unless the size changed or more than half of the pixels did. Colors with equal counts
+     * may then be ranked in a different order than a fresh analysis would. Frames with
+     * {@link #isMasked() masked} pixels are always counted from scratch.
+     */
+    void analyzeFrame(int[] pixels, int width, int height) {
+        if (!updateColors(pixels, width, height)) {
+            countColors(pixels, width, height);
+            int pixelCount = width * height;
+            if (mFrame == null || mFrame.length < pixelCount) {
+                mFrame = new int[pixelCount];
+            }
+            System.arraycopy(pixels, 0, mFrame, 0, pixelCount);
+            mFrameWidth = width;
+            mFrameHeight = height;
+            mFrameEdges = mEdges;
+            mFrameValid = true;
+        }
+        mBackgroundColor = pickEdgeColor(mEdgeColors, mEdgeLengths[SIDE_LEFT]);
+        pickSideColors();
+        pickTextColors();
+    }
+
+    /**
+     * Makes the next {@link #analyzeFrame} start over, as the first frame of a new sequence.
+     */
+    void resetFrames() {
+        mFrameValid = false;
+    }
+
+    /**
+     * Moves the pixels that differ from {@link #mFrame} from their old colors to their new
+     * ones in all histograms.
+     *
+     * @return false if the histograms have to be built from scratch instead
+     */
+    private boolean updateColors(int[] pixels, int width, int height) {
+        if (!mFrameValid || isMasked() || width != mFrameWidth || height != mFrameHeight || mEdges != mFrameEdges) {
+            return false;
+        }
+        int[] frame = mFrame;
+        int pixelCount = width * height;
+        int maxChanged = pixelCount / 2;
+        int changed = 0;
+        for (int i = 0; i < pixelCount; i++) {
+            if (pixels[i] != frame[i] && ++changed > maxChanged) {
+                // a cut to another scene, counting every pixel once is cheaper
+                return false;
+            }
+        }
+
+        ColorArtMetrics metrics = mMetrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        ColorHistogram imageColors = mImageColors;
+        ColorHistogram leftImageColors = mEdgeColors;
+        ColorHistogram rightImageColors = mSideHistograms[SIDE_RIGHT];
+        ColorHistogram topImageColors = mSideHistograms[SIDE_TOP];
+        ColorHistogram bottomImageColors = mSideHistograms[SIDE_BOTTOM];
+        int edges = mEdges;
+        for (int i = 0; changed > 0; i++) {
+            int color = pixels[i];
+            int oldColor = frame[i];
+            if (color == oldColor) {
+                continue;
+            }
+            changed--;
+            frame[i] = color;
+            imageColors.add(oldColor, -1);
+            imageColors.add(color);
+            int x = i % width;
+            int y = i / width;
+            if (x == 0) {
+                leftImageColors.add(oldColor, -1);
+                leftImageColors.add(color);
+            }
+            if (x == width - 1 && (edges & (1 << SIDE_RIGHT)) != 0) {
+                rightImageColors.add(oldColor, -1);
+                rightImageColors.add(color);
+            }
+            if (y == 0 && (edges & (1 << SIDE_TOP)) != 0) {
+                topImageColors.add(oldColor, -1);
+                topImageColors.add(color);
+            }
+            if (y == height - 1 && (edges & (1 << SIDE_BOTTOM)) != 0) {
+                bottomImageColors.add(oldColor, -1);
+                bottomImageColors.add(color);
+            }
+        }
+        // colors that left the frame would otherwise pile up from one frame to the next
+        imageColors.removeEmpty();
+        leftImageColors.removeEmpty();
+        for (int side = SIDE_RIGHT; side < SIDE_COUNT; side++) {
+            if ((edges & (1 << side)) != 0) {
+                mSideHistograms[side].removeEmpty();
+            }
+        }
+        if (metrics != null) {
+            metrics.addStageNanos(ColorArtMetrics.Stage.HISTOGRAM, System.nanoTime() - start);
+            metrics.mSampledPixels = pixelCount;
+            metrics.mDistinctColors = imageColors.size();
+        }
+        return true;
+    }
+
+    private void pickSideColors() {
+        mSideColors[SIDE_LEFT] = mBackgroundColor;
+        for (int side = SIDE_RIGHT; side < SIDE_COUNT; side++) {
+            if ((mEdges & (1 << side)) != 0) {
+                mSideColors[side] = pickEdgeColor(mSideHistograms[side], mEdgeLengths[side]);
+            }
+        }
+    }
+
+    private void pickTextColors() {
+        ColorArtMetrics metrics = mMetrics;
+        if (mPaletteSize > 0) {
+            long start = metrics != null ? System.nanoTime() : 0;
+            // summarized from the same histogram as the text colors
+            mQuantizer.quantize(mImageColors, Math.max(PALETTE_BINS, mPaletteSize), mPaletteColors);
+            if (metrics != null) {
+                metrics.addStageNanos(ColorArtMetrics.Stage.QUANTIZE, System.nanoTime() - start);
+            }
+        }
+        ColorHistogram textCandidates = mImageColors;
+        if (mMaxTextCandidates > 0) {
+            long start = metrics != null ? System.nanoTime() : 0;
+            mQuantizer.quantize(mImageColors, mMaxTextCandidates, mQuantizedColors);
+            textCandidates = mQuantizedColors;
+            if (metrics != null) {
+                metrics.addStageNanos(ColorArtMetrics.Stage.QUANTIZE, System.nanoTime() - start);
+            }
+        }
+        findTextColors(textCandidates);
+
+        int fallbackColor = ColorMath.isDark(ColorMath.luminance(mBackgroundColor)) ? WHITE : BLACK;
+        if ((mFallbacks & FALLBACK_PRIMARY) != 0) {
+            mPrimaryColor = fallbackColor;
+        }
+        if ((mFallbacks & FALLBACK_SECONDARY) != 0) {
+            mSecondaryColor = fallbackColor;
+        }
+        if ((mFallbacks & FALLBACK_DETAIL) != 0) {
+            mDetailColor = fallbackColor;
+        }
+        if (metrics != null) {
+            metrics.mFallbacks = mFallbacks;
+        }
+    }
+
+    /**
+     * Builds the histograms of the whole image and of its edges, and picks the most common
+     * left edge color that isn't black or white, unless black or white clearly dominate.
+     */
+    int findEdgeColor(int[] pixels, int width, int height) {
+        countColors(pixels, width, height);
+        return pickEdgeColor(mEdgeColors, mEdgeLengths[SIDE_LEFT]);
+    }
+
+    /**
+     * Finds the same edge color as {@link #findEdgeColor}, reading only the left column of
+     * the pixels.
+     */
+    int findLeftEdgeColor(int[] pixels, int width, int height) {
+        ColorHistogram leftImageColors = mEdgeColors;
+        leftImageColors.clear();
+        mFrameValid = false;
+        for (int i = 0, end = width * height; i < end; i += width) {
+            leftImageColors.add(pixels[i]);
+        }
+        return pickEdgeColor(leftImageColors, height);
+    }
+
+    private void countColors(int[] pixels, int width, int height) {
+        ColorArtMetrics metrics = mMetrics;
+        mPixelCount = width * height;
+        mEdgeLengths[SIDE_LEFT] = height;
+        mEdgeLengths[SIDE_RIGHT] = height;
+        mEdgeLengths[SIDE_TOP] = width;
+        mEdgeLengths[SIDE_BOTTOM] = width;
+        mFrameValid = false;
+        long start = metrics != null ? System.nanoTime() : 0;
+        ColorHistogram leftImageColors = mEdgeColors;
+        ColorHistogram rightImageColors = sideHistogram(SIDE_RIGHT);
+        ColorHistogram topImageColors = sideHistogram(SIDE_TOP);
+        ColorHistogram bottomImageColors = sideHistogram(SIDE_BOTTOM);
+        if (isMasked()) {
+            // rare enough, and usually on small sample grids, to always run on one thread
+            countMaskedColors(pixels, width, height, rightImageColors, topImageColors, bottomImageColors);
+        } else if ((long) width * height >= mParallelThreshold && ParallelScan.isAvailable()) {
+            if (mParallelScan == null) {
+                mParallelScan = new ParallelScan();
+            }
+            mParallelScan.scan(pixels, width, height, mImageColors, leftImageColors);
+            // the other edges are only a row or column each, not worth splitting up
+            if (rightImageColors != null) {
+                for (int i = width - 1, end = width * height; i < end; i += width) {
+                    rightImageColors.add(pixels[i]);
+                }
+            }
+            addRow(topImageColors, pixels, 0, width);
+            addRow(bottomImageColors, pixels, (height - 1) * width, width);
+        } else {
+            ColorHistogram imageColors = mImageColors;
+            imageColors.clear();
+            leftImageColors.clear();
+            for (int y = 0; y < height; y++) {
+                int rowStart = y * width;
+                int rowEnd = rowStart + width;
+                leftImageColors.add(pixels[rowStart]);
+                if (rightImageColors != null) {
+                    rightImageColors.add(pixels[rowEnd - 1]);
+                }
+                for (int i = rowStart; i < rowEnd; i++) {
+                    imageColors.add(pixels[i]);
+                }
+                // the row is still in cache
+                if (y == 0) {
+                    addRow(topImageColors, pixels, rowStart, width);
+                }
+                if (y == height - 1) {
+                    addRow(bottomImageColors, pixels, rowStart, width);
+                }
+            }
+        }
+        if (metrics != null) {
+            metrics.addStageNanos(ColorArtMetrics.Stage.HISTOGRAM, System.nanoTime() - start);
+            metrics.mSampledPixels = mPixelCount;
+            metrics.mDistinctColors = mImageColors.size();
+        }
+    }
+
+    /**
+     * Counts the pixels inside the region that aren't below the alpha cutoff, and the first
+     * and last of them in each row and column as the edges.
+     */
+    private void countMaskedColors(int[] pixels, int width, int height, ColorHistogram rightImageColors,
+                                   ColorHistogram topImageColors, ColorHistogram bottomImageColors) {
+        int[] bounds = mBounds;
+        bounds[0] = Math.min(width - 1, (int) (mRegionLeft * width));
+        bounds[1] = Math.min(height - 1, (int) (mRegionTop * height));
+        bounds[2] = Math.max(bounds[0] + 1, Math.min(width, (int) Math.ceil(mRegionRight * width)));
+        bounds[3] = Math.max(bounds[1] + 1, Math.min(height, (int) Math.ceil(mRegionBottom * height)));
+        if (mTrimBorders) {
+            trimBorders(pixels, width, bounds);
+        }
+        int left = bounds[0];
+        int top = bounds[1];
+        int right = bounds[2];
+        int bottom = bounds[3];
+
+        int regionWidth = right - left;
+        int[] columns = null;
+        if (topImageColors != null || bottomImageColors != null) {
+            if (mColumnPixels == null || mColumnPixels.length < regionWidth * 2) {
+                mColumnPixels = new int[regionWidth * 2];
+            }
+            columns = mColumnPixels;
+            Arrays.fill(columns, 0, regionWidth, -1);
+        }
+
+        int minAlpha = mMinAlpha;
+        ColorHistogram imageColors = mImageColors;
+        ColorHistogram leftImageColors = mEdgeColors;
+        imageColors.clear();
+        leftImageColors.clear();
+        int pixelCount = 0;
+        int rowCount = 0;
+        for (int y = top; y < bottom; y++) {
+            int rowStart = y * width;
+            int first = -1;
+            int last = -1;
+            for (int i = rowStart + left, rowEnd = rowStart + right; i < rowEnd; i++) {
+                int color = pixels[i];
+                if (color >>> 24 < minAlpha) {
+                    continue;
+                }
+                imageColors.add(color);
+                pixelCount++;
+                if (first < 0) {
+                    first = i;
+                }
+                last = i;
+                if (columns != null) {
+                    int column = i - rowStart - left;
+                    if (columns[column] < 0) {
+                        columns[column] = i;
+                    }
+                    columns[regionWidth + column] = i;
+                }
+            }
+            if (first >= 0) {
+                rowCount++;
+                leftImageColors.add(pixels[first]);
+                if (rightImageColors != null) {
+                    rightImageColors.add(pixels[last]);
+                }
+            }
+        }
+        int columnCount = 0;
+        if (columns != null) {
+            for (int column = 0; column < regionWidth; column++) {
+                if (columns[column] >= 0) {
+                    columnCount++;
+                    if (topImageColors != null) {
+                        topImageColors.add(pixels[columns[column]]);
+                    }
+                    if (bottomImageColors != null) {
+                        bottomImageColors.add(pixels[columns[regionWidth + column]]);
+                    }
+                }
+            }
+        }
+        mPixelCount = pixelCount;
+        mEdgeLengths[SIDE_LEFT] = rowCount;
+        mEdgeLengths[SIDE_RIGHT] = rowCount;
+        mEdgeLengths[SIDE_TOP] = columnCount;
+        mEdgeLengths[SIDE_BOTTOM] = columnCount;
+    }
+
+    /**
+     * Moves {@code bounds} in past the rows and columns along its sides whose pixels are all
+     * similar to the corner they start at, if that is black or white. Checking a row stops at
+     * its first other pixel, so this only reads more than a handful of pixels on the bars
+     * themselves. Colored stripes are left alone, they are the edge colors ColorArt is after.
+     */
+    private static void trimBorders(int[] pixels, int width, int[] bounds) {
+        int left = bounds[0];
+        int top = bounds[1];
+        int right = bounds[2];
+        int bottom = bounds[3];
+        int maxRows = (bottom - top) / MAX_BORDER_DIVISOR;
+        int maxColumns = (right - left) / MAX_BORDER_DIVISOR;
+
+        int maxTop = top + maxRows;
+        int corner = pixels[top * width + left];
+        while (top < maxTop && isBar(pixels, top * width + left, 1, right - left, corner)) {
+            top++;
+        }
+        int minBottom = bottom - maxRows;
+        corner = pixels[(bottom - 1) * width + left];
+        while (bottom > minBottom && isBar(pixels, (bottom - 1) * width + left, 1, right - left, corner)) {
+            bottom--;
+        }
+        int maxLeft = left + maxColumns;
+        corner = pixels[top * width + left];
+        while (left < maxLeft && isBar(pixels, top * width + left, width, bottom - top, corner)) {
+            left++;
+        }
+        int minRight = right - maxColumns;
+        corner = pixels[top * width + right - 1];
+        while (right > minRight && isBar(pixels, top * width + right - 1, width, bottom - top, corner)) {
+            right--;
+        }
+
+        bounds[0] = left;
+        bounds[1] = top;
+        bounds[2] = right;
+        bounds[3] = bottom;
+    }
+
+    /**
+     * @return whether {@code color} is black or white and the {@code count} pixels from
+     * {@code start} on, {@code step} apart, are all similar to it
+     */
+    private static boolean isBar(int[] pixels, int start, int step, int count, int color) {
+        if (!ColorMath.isBlackOrWhite(color)) {
+            return false;
+        }
+        for (int i = start, end = start + step * count; i < end; i += step) {
+            if (!ColorMath.isSimilar(pixels[i], color)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the cleared histogram for {@code side}, or null if it isn't tracked
+     */
+    private ColorHistogram sideHistogram(int side) {
+        if ((mEdges & (1 << side)) == 0) {
+            return null;
+        }
+        ColorHistogram histogram = mSideHistograms[side];
+        if (histogram == null) {
+            histogram = new ColorHistogram(DEFAULT_SAMPLE_SIZE);
+            mSideHistograms[side] = histogram;
+        } else {
+            histogram.clear();
+        }
+        return histogram;
+    }
+
+    private static void addRow(ColorHistogram histogram, int[] pixels, int rowStart, int width) {
+        if (histogram == null) {
+            return;
+        }
+        for (int i = rowStart, rowEnd = rowStart + width; i < rowEnd; i++) {
+            histogram.add(pixels[i]);
+        }
+    }
+
+    /**
+     * @param length the number of pixels along the edge
+     */
+    private int pickEdgeColor(ColorHistogram edgeColors, int length) {
+        ColorArtMetrics metrics = mMetrics;
+        if (metrics == null) {
+            return selectEdgeColor(edgeColors, length, null);
+        }
+        long start = System.nanoTime();
+        int edgeColor = selectEdgeColor(edgeColors, length, metrics);
+        metrics.addStageNanos(ColorArtMetrics.Stage.EDGE, System.nanoTime() - start);
+        if (edgeColors == mEdgeColors) {
+            metrics.mEdgeColors = edgeColors.size();
+            metrics.mBackgroundFallback = mCandidates.size() == 0;
+        }
+        return edgeColor;
+    }
+
+    private int selectEdgeColor(ColorHistogram edgeColors, int length, ColorArtMetrics metrics) {
+        ColorHeap candidates = mCandidates;
+        candidates.clear();
+        int randomColorThreshold = (int) (length * COLOR_THRESHOLD_MINIMUM_PERCENTAGE);
+        for (int i = 0; i < edgeColors.size(); i++) {
+            int colorCount = edgeColors.countAt(i);
+            if (colorCount < randomColorThreshold) {
+                if (metrics != null) {
+                    metrics.reject(ColorArtMetrics.Rejection.EDGE_THRESHOLD);
+                }
+                continue;
+            }
+            candidates.add(edgeColors.colorAt(i), colorCount);
+        }
+
+        int proposed = candidates.next();
+        if (proposed < 0) {
+            return BLACK;
+        }
+
+        int proposedEdgeColor = candidates.colorAt(proposed);
+        int proposedEdgeCount = candidates.countAt(proposed);
+        if (!ColorMath.isBlackOrWhite(proposedEdgeColor)) {
+            return proposedEdgeColor;
+        }
+        if (metrics != null) {
+            metrics.reject(ColorArtMetrics.Rejection.EDGE_BLACK_OR_WHITE);
+        }
+
+        int next;
+        while ((next = candidates.next()) >= 0) {
+            double edgeColorRatio = (double) candidates.countAt(next) / proposedEdgeCount;
+            if (edgeColorRatio <= EDGE_COLOR_DISCARD_THRESHOLD) {
+                break;
+            }
+
+            if (!ColorMath.isBlackOrWhite(candidates.colorAt(next))) {
+                proposedEdgeColor = candidates.colorAt(next);
+                break;
+            }
+            if (metrics != null) {
+                metrics.reject(ColorArtMetrics.Rejection.EDGE_BLACK_OR_WHITE);
+            }
+        }
+
+        return proposedEdgeColor;
+    }
+
+    /**
+     * Picks the primary, secondary and detail colors out of {@code colors}. Roles for which
+     * no color qualifies are flagged in {@link #getFallbacks()}.
+     */
+    void findTextColors(ColorHistogram colors) {
+        ColorArtMetrics metrics = mMetrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        int currentColor;
+        int backgroundLuminance = ColorMath.luminance(mBackgroundColor);
+        boolean findDarkTextColor = !ColorMath.isDark(backgroundLuminance);
+
+        ColorHeap candidates = mCandidates;
+        candidates.clear();
+        for (int i = 0; i < colors.size(); i++) {
+            currentColor = ColorMath.withMinimumSaturation(colors.colorAt(i), MINIMUM_SATURATION);
+            int luminance = ColorMath.luminance(currentColor);
+            if (ColorMath.isDark(luminance) == findDarkTextColor) {
+                // rank by how often the original color occurs, the adjusted one may not occur at all
+                candidates.add(currentColor, colors.countAt(i), luminance);
+            }
+        }
+        if (metrics != null) {
+            long now = System.nanoTime();
+            metrics.addStageNanos(ColorArtMetrics.Stage.CANDIDATES, now - start);
+            metrics.mTextCandidates = candidates.size();
+            metrics.reject(ColorArtMetrics.Rejection.BRIGHTNESS, colors.size() - candidates.size());
+            start = now;
+        }
+
+        boolean perceptual = mDistance != ColorDistance.RGB;
+        boolean wcag = mContrast != ColorContrast.LEGACY;
+        float backgroundLinearLuminance = wcag ? PerceptualMath.linearLuminance(mBackgroundColor) : 0;
+
+        mFallbacks = FALLBACK_PRIMARY | FALLBACK_SECONDARY | FALLBACK_DETAIL;
+        int candidate;
+        while ((candidate = candidates.next()) >= 0) {
+            currentColor = candidates.colorAt(candidate);
+            boolean contrasting = wcag
+                    ? PerceptualMath.hasContrastRatio(PerceptualMath.linearLuminance(currentColor),
+                    backgroundLinearLuminance, mContrast.mMinimumRatio)
+                    : ColorMath.isContrasting(candidates.luminanceAt(candidate), backgroundLuminance);
+            if (!contrasting) {
+                if (metrics != null) {
+                    metrics.reject(ColorArtMetrics.Rejection.CONTRAST);
+                }
+                continue;
+            }
+            if (perceptual) {
+                // converted once per candidate, and kept for comparing the later ones against it
+                PerceptualMath.toLab(currentColor, mLab, LAB_CURRENT);
+            }
+            if ((mFallbacks & FALLBACK_PRIMARY) != 0) {
+                mPrimaryColor = currentColor;
+                keepLab(LAB_PRIMARY);
+                mFallbacks &= ~FALLBACK_PRIMARY;
+            } else if ((mFallbacks & FALLBACK_SECONDARY) != 0) {
+                if (!isDistinct(mPrimaryColor, LAB_PRIMARY, currentColor)) {
+                    if (metrics != null) {
+                        metrics.reject(ColorArtMetrics.Rejection.DISTINCT);
+                    }
+                    continue;
+                }
+                mSecondaryColor = currentColor;
+                keepLab(LAB_SECONDARY);
+                mFallbacks &= ~FALLBACK_SECONDARY;
+            } else {
+                if (!isDistinct(mSecondaryColor, LAB_SECONDARY, currentColor) ||
+                        !isDistinct(mPrimaryColor, LAB_PRIMARY, currentColor)) {
+                    if (metrics != null) {
+                        metrics.reject(ColorArtMetrics.Rejection.DISTINCT);
+                    }
+                    continue;
+                }
+                mDetailColor = currentColor;
+                mFallbacks &= ~FALLBACK_DETAIL;
+                break;
+            }
+        }
+        if (metrics != null) {
+            metrics.addStageNanos(ColorArtMetrics.Stage.SELECTION, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param labOffset where the Lab coordinates of {@code color} are in {@link #mLab}, the
+     *                  current candidate's are at {@link #LAB_CURRENT}
+     */
+    private boolean isDistinct(int color, int labOffset, int currentColor) {
+        switch (mDistance) {
+            case CIE76:
+                return !(ColorMath.isGray(color) && ColorMath.isGray(currentColor))
+                        && PerceptualMath.deltaE76(mLab, labOffset, LAB_CURRENT) >= mDistance.mMinimumDelta;
+            case CIEDE2000:
+                return !(ColorMath.isGray(color) && ColorMath.isGray(currentColor))
+                        && PerceptualMath.deltaE2000(mLab, labOffset, LAB_CURRENT) >= mDistance.mMinimumDelta;
+            default:
+                return ColorMath.isDistinct(color, currentColor);
+        }
+    }
+
+    private void keepLab(int labOffset) {
+        if (mDistance != ColorDistance.RGB) {
+            System.arraycopy(mLab, LAB_CURRENT, mLab, labOffset, PerceptualMath.LAB_SIZE);
+        }
+    }
+
+    ColorHistogram getImageColors() {
+        return mImageColors;
+    }
+
+    int getBackgroundColor() {
+        return mBackgroundColor;
+    }
+
+    /**
+     * @return the edge color of {@code side}, only meaningful for sides set with
+     * {@link #setEdges}
+     */
+    int getSideColor(int side) {
+        return mSideColors[side];
+    }
+
+    int getPrimaryColor() {
+        return mPrimaryColor;
+    }
+
+    int getSecondaryColor() {
+        return mSecondaryColor;
+    }
+
+    int getDetailColor() {
+        return mDetailColor;
+    }
+
+    /**
+     * Builds the palette of the last analysis, if {@link #setPaletteSize} enabled it.
+     *
+     * @return the palette, or null if it is disabled
+     */
+    ColorArtPalette getPalette() {
+        if (mPaletteSize <= 0) {
+            return null;
+        }
+        ColorHeap ranked = mCandidates;
+        ranked.clear();
+        for (int i = 0; i < mPaletteColors.size(); i++) {
+            ranked.add(mPaletteColors.colorAt(i), mPaletteColors.countAt(i));
+        }
+        int[] colors = new int[mPaletteSize];
+        int[] populations = new int[mPaletteSize];
+        int size = 0;
+        int next;
+        while ((next = ranked.next()) >= 0) {
+            int color = ranked.colorAt(next);
+            // neighbouring bins can split one color in two, fold it into the more common half
+            int similar = -1;
+            for (int i = 0; i < size && similar < 0; i++) {
+                if (ColorMath.isSimilar(colors[i], color)) {
+                    similar = i;
+                }
+            }
+            if (similar >= 0) {
+                populations[similar] += ranked.countAt(next);
+            } else if (size < mPaletteSize) {
+                colors[size] = color;
+                populations[size] = ranked.countAt(next);
+                size++;
+            }
+        }
+
+        List<ColorArtPalette.Swatch> swatches = new ArrayList<ColorArtPalette.Swatch>(size);
+        for (int i = 0; i < size; i++) {
+            swatches.add(new ColorArtPalette.Swatch(colors[i], populations[i], mPixelCount));
+        }
+        ColorArtResult result = new ColorArtResult(mBackgroundColor, mPrimaryColor, mSecondaryColor, mDetailColor);
+        return new ColorArtPalette(result, swatches);
+    }
+
+    /**
+     * @return which roles fell back to black or white, as {@code FALLBACK_*} flags
+     */
+    int getFallbacks() {
+        return mFallbacks;
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Analyzes every image in a directory on all cores and writes one line per image, for
+ * pre-computing colors on a server:
+ * <pre>
+ * java -jar colorart-core.jar [--threads n] [--sample-size n] [--alpha-cutoff n]
+ *         [--trim-borders] [--store results.bin] covers/ [colors.tsv]
+ * </pre>
+ * Each line holds the file name and the background, primary, secondary and detail colors
+ * as {@code #AARRGGBB}, separated by tabs, in the order the images finish. With
+ * {@code --store} the results are also put into a {@link ColorArtStore} keyed by
+ * {@link ColorArtStore#hashKey} of the file name, ready to ship to the app, under the
+ * algorithm version of the settings used. Images are decoded subsampled, by the largest
+ * power of two that keeps them at least as large as the sample grid, like
+ * {@code ColorArt.fromFile} does. Images that can't be decoded are reported on standard
+ * error and skipped.
+ */
+public final class ColorArtBatchRunner {
+    private static final String IMAGE_FILES = "*.{jpg,jpeg,png,gif,bmp,JPG,JPEG,PNG,GIF,BMP}";
+    // images decoded or queued ahead of the writer, per thread
+    private static final int QUEUED_PER_THREAD = 4;
+
+    private final int mThreads;
+    private final ColorArtRasterAnalyzer.Builder mAnalyzerBuilder;
+    private final ThreadLocal<ColorArtRasterAnalyzer> mAnalyzers = new ThreadLocal<ColorArtRasterAnalyzer>() {
+        @Override
+        protected ColorArtRasterAnalyzer initialValue() {
+            return mAnalyzerBuilder.build();
+        }
+    };
+    private int mFailures;
+
+    /**
+     * @param threads how many images to decode and analyze at once
+     * @param analyzer the settings every thread builds its analyzer with
+     */
+    public ColorArtBatchRunner(int threads, ColorArtRasterAnalyzer.Builder analyzer) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be > 0");
+        }
+        if (analyzer == null) {
+            throw new IllegalArgumentException("analyzer must not be null");
+        }
+        mThreads = threads;
+        mAnalyzerBuilder = analyzer;
+    }
+
+    /**
+     * Analyzes the images in {@code directory}, not descending into subdirectories.
+     *
+     * @param store where to put the results as well, or null
+     * @return how many images were analyzed
+     */
+    public int run(Path directory, Writer out, ColorArtStore store) throws IOException {
+        ImageIO.setUseCache(false);
+        mFailures = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(mThreads);
+        CompletionService<Line> completion = new ExecutorCompletionService<Line>(executor);
+        int maxQueued = mThreads * QUEUED_PER_THREAD;
+        int queued = 0;
+        int analyzed = 0;
+        DirectoryStream<Path> images = Files.newDirectoryStream(directory, IMAGE_FILES);
+        try {
+            for (Path image : images) {
+                if (queued == maxQueued) {
+                    analyzed += write(completion, out, store);
+                    queued--;
+                }
+                completion.submit(new Task(image));
+                queued++;
+            }
+            for (; queued > 0; queued--) {
+                analyzed += write(completion, out, store);
+            }
+        } finally {
+            executor.shutdownNow();
+            images.close();
+        }
+        out.flush();
+        return analyzed;
+    }
+
+    /**
+     * @return how many images failed to decode in the last {@link #run}
+     */
+    public int getFailures() {
+        return mFailures;
+    }
+
+    /**
+     * Waits for the next analysis to finish and writes it out.
+     *
+     * @return 1 if it succeeded, 0 if it failed
+     */
+    private int write(CompletionService<Line> completion, Writer out, ColorArtStore store) throws IOException {
+        Line line;
+        try {
+            line = completion.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        if (line.mResult == null) {
+            System.err.println(line.mName + ": " + line.mError);
+            mFailures++;
+            return 0;
+        }
+        ColorArtResult result = line.mResult;
+        out.write(line.mName);
+        writeColor(out, result.getBackgroundColor());
+        writeColor(out, result.getPrimaryColor());
+        writeColor(out, result.getSecondaryColor());
+        writeColor(out, result.getDetailColor());
+        out.write('\n');
+        if (store != null) {
+            store.put(ColorArtStore.hashKey(line.mName), result);
+        }
+        return 1;
+    }
+
+    private static void writeColor(Writer out, int color) throws IOException {
+        out.write("\t#");
+        String hex = Integer.toHexString(color).toUpperCase(Locale.US);
+        for (int i = hex.length(); i < 8; i++) {
+            out.write('0');
+        }
+        out.write(hex);
+    }
+
+    private final class Task implements Callable<Line> {
+        private final Path mImage;
+
+        Task(Path image) {
+            mImage = image;
+        }
+
+        @Override
+        public Line call() {
+            String name = mImage.getFileName().toString();
+            try {
+                BufferedImage image = read(mImage.toFile());
+                if (image == null) {
+                    return new Line(name, null, "not a decodable image");
+                }
+                return new Line(name, mAnalyzers.get().analyze(image), null);
+            } catch (IOException e) {
+                return new Line(name, null, e.toString());
+            } catch (RuntimeException e) {
+                // a corrupt image can throw out of any decoder, don't let it end the batch
+                return new Line(name, null, e.toString());
+            }
+        }
+    }
+
+    /**
+     * @return the first image in {@code file}, subsampled down towards the sample grid, or
+     * null if no reader understands it
+     */
+    private BufferedImage read(File file) throws IOException {
+        ImageInputStream in = ImageIO.createImageInputStream(file);
+        if (in == null) {
+            throw new IOException("Unable to open " + file);
+        }
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int smallerSide = Math.min(reader.getWidth(0), reader.getHeight(0));
+                int sampleSize = mAnalyzerBuilder.getSampleSize();
+                int subsampling = 1;
+                while (smallerSide / (subsampling * 2) >= sampleSize) {
+                    subsampling *= 2;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static final class Line {
+        final String mName;
+        final ColorArtResult mResult;
+        final String mError;
+
+        Line(String name, ColorArtResult result, String error) {
+            mName = name;
+            mResult = result;
+            mError = error;
+        }
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ColorArtRasterAnalyzer.Builder analyzer = new ColorArtRasterAnalyzer.Builder();
+        String storeFile = null;
+        String directory = null;
+        String outputFile = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--threads")) {
+                    threads = Integer.parseInt(value(args, ++i));
+                } else if (arg.equals("--sample-size")) {
+                    analyzer.sampleSize(Integer.parseInt(value(args, ++i)));
+                } else if (arg.equals("--alpha-cutoff")) {
+                    analyzer.alphaCutoff(Integer.parseInt(value(args, ++i)));
+                } else if (arg.equals("--trim-borders")) {
+                    analyzer.trimBorders(true);
+                } else if (arg.equals("--store")) {
+                    storeFile = value(args, ++i);
+                } else if (arg.startsWith("--") || outputFile != null) {
+                    throw new IllegalArgumentException("Unexpected argument " + arg);
+                } else if (directory == null) {
+                    directory = arg;
+                } else {
+                    outputFile = arg;
+                }
+            }
+            if (directory == null) {
+                throw new IllegalArgumentException("No image directory given");
+            }
+            if (threads <= 0) {
+                throw new IllegalArgumentException("--threads must be > 0");
+            }
+        } catch (IllegalArgumentException e) {
+            // including a NumberFormatException for a flag's value
+            System.err.println(e.getMessage());
+            System.err.println("Usage: ColorArtBatchRunner [--threads n] [--sample-size n] [--alpha-cutoff n]"
+                    + " [--trim-borders] [--store file] <image directory> [<output file>]");
+            System.exit(2);
+            return;
+        }
+
+        ColorArtBatchRunner runner = new ColorArtBatchRunner(threads, analyzer);
+        ColorArtStore store = storeFile != null
+                ? ColorArtStore.open(new File(storeFile), analyzer.getAlgorithmVersion())
+                : null;
+        Writer out = outputFile != null
+                ? Files.newBufferedWriter(Paths.get(outputFile), StandardCharsets.UTF_8)
+                : new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        long start = System.nanoTime();
+        int analyzed;
+        try {
+            analyzed = runner.run(Paths.get(directory), out, store);
+        } finally {
+            out.close();
+            if (store != null) {
+                store.close();
+            }
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+        System.err.println("Analyzed " + analyzed + " images in " + millis + " ms ("
+                + analyzed * 1000L / millis + " per second), " + runner.getFailures() + " failed");
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded, least recently used cache of {@link ColorArtResult}s keyed by image
+ * identity, such as a resource id, a URL or a content hash.
+ * <p>
+ * Keys are spread over independently locked segments, each with its own LRU order, so
+ * concurrent lookups of different images rarely contend. Only the four result colors are
+ * retained, never the image.
+ */
+public final class ColorArtCache {
+    private static final int DEFAULT_MAX_SIZE = 256;
+    private static final int MAX_SEGMENTS = 16;
+
+    private static final ColorArtCache sDefault = new ColorArtCache(DEFAULT_MAX_SIZE);
+
+    private final Segment[] mSegments;
+    private final int mMaxSize;
+
+    /**
+     * @return the cache shared by the whole process
+     */
+    public static ColorArtCache getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * @param maxSize the maximum number of results to keep
+     */
+    public ColorArtCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be > 0");
+        }
+        // keep every segment able to hold a handful of entries so eviction stays close to LRU
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && segmentCount * 8 <= maxSize) {
+            segmentCount <<= 1;
+        }
+        mSegments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            int segmentSize = maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0);
+            mSegments[i] = new Segment(segmentSize);
+        }
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @return the cached result for {@code key}, or null if there is none
+     */
+    public ColorArtResult get(Object key) {
+        return segmentFor(key).get(key);
+    }
+
+    public void put(Object key, ColorArtResult result) {
+        Segment segment = segmentFor(key);
+        if (result == null) {
+            throw new IllegalArgumentException("result must not be null");
+        }
+        segment.put(key, result);
+    }
+
+    public void remove(Object key) {
+        segmentFor(key).remove(key);
+    }
+
+    public void evictAll() {
+        for (Segment segment : mSegments) {
+            segment.evictAll();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : mSegments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public int maxSize() {
+        return mMaxSize;
+    }
+
+    public long hitCount() {
+        long count = 0;
+        for (Segment segment : mSegments) {
+            synchronized (segment) {
+                count += segment.mHitCount;
+            }
+        }
+        return count;
+    }
+
+    public long missCount() {
+        long count = 0;
+        for (Segment segment : mSegments) {
+            synchronized (segment) {
+                count += segment.mMissCount;
+            }
+        }
+        return count;
+    }
+
+    public long evictionCount() {
+        long count = 0;
+        for (Segment segment : mSegments) {
+            synchronized (segment) {
+                count += segment.mEvictionCount;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        long hits = hitCount();
+        long accesses = hits + missCount();
+        int hitPercent = accesses != 0 ? (int) (100 * hits / accesses) : 0;
+        return "ColorArtCache[size=" + size() + ",maxSize=" + mMaxSize + ",hits=" + hits
+                + ",misses=" + missCount() + ",evictions=" + evictionCount()
+                + ",hitRate=" + hitPercent + "%]";
+    }
+
+    private Segment segmentFor(Object key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key must not be null");
+        }
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return mSegments[h & (mSegments.length - 1)];
+    }
+
+    private static final class Segment {
+        private final LinkedHashMap<Object, ColorArtResult> mMap;
+        long mHitCount;
+        long mMissCount;
+        long mEvictionCount;
+
+        Segment(final int maxSize) {
+            mMap = new LinkedHashMap<Object, ColorArtResult>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, ColorArtResult> eldest) {
+                    if (size() > maxSize) {
+                        mEvictionCount++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized ColorArtResult get(Object key) {
+            ColorArtResult result = mMap.get(key);
+            if (result != null) {
+                mHitCount++;
+            } else {
+                mMissCount++;
+            }
+            return result;
+        }
+
+        synchronized void put(Object key, ColorArtResult result) {
+            mMap.put(key, result);
+        }
+
+        synchronized void remove(Object key) {
+            mMap.remove(key);
+        }
+
+        synchronized void evictAll() {
+            mEvictionCount += mMap.size();
+            mMap.clear();
+        }
+
+        int size() {
+            return mMap.size();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+/**
+ * What one analysis spent its time on and how it reached its colors, reported to a
+ * {@code ColorArt.MetricsListener}.
+ * <p>
+ * Each thread reuses a single instance from one analysis to the next, so a listener must
+ * read the values it needs before returning instead of keeping the object.
+ */
+public final class ColorArtMetrics {
+    public enum Stage {
+        /**
+         * Decoding an encoded image, for {@code ColorArt.fromStream} and {@code ColorArt.fromFile}.
+         */
+        DECODE,
+        /**
+         * {@code Bitmap.createScaledBitmap}, for {@code Sampling.SCALED}.
+         */
+        SCALE,
+        /**
+         * Reading the sampled pixels out of the bitmap.
+         */
+        READ,
+        /**
+         * Counting the colors of the image and of its edges.
+         */
+        HISTOGRAM,
+        /**
+         * Picking the edge colors out of their histograms, for every side requested with
+         * {@code ColorArt.Options.Builder.edges}. {@link #getEdgeColors()} and
+         * {@link #isBackgroundFallback()} only describe the left edge.
+         */
+        EDGE,
+        /**
+         * Merging similar colors, see {@code ColorArt.Options.Builder.quantize}.
+         */
+        QUANTIZE,
+        /**
+         * Adjusting the saturation of every color and ranking the text color candidates.
+         */
+        CANDIDATES,
+        /**
+         * Picking the primary, secondary and detail colors out of the candidates.
+         */
+        SELECTION
+    }
+
+    public enum Rejection {
+        /**
+         * An edge color occurred on less than 1% of its edge, on any analyzed side.
+         */
+        EDGE_THRESHOLD,
+        /**
+         * A common edge color was skipped for being black or white, on any analyzed side.
+         */
+        EDGE_BLACK_OR_WHITE,
+        /**
+         * A color was as dark as a dark background, or as light as a light one.
+         */
+        BRIGHTNESS,
+        /**
+         * A candidate didn't contrast enough with the background.
+         */
+        CONTRAST,
+        /**
+         * A candidate was too close to a text color picked before it.
+         */
+        DISTINCT
+    }
+
+    private static final int STAGE_COUNT = Stage.values().length;
+    private static final int REJECTION_COUNT = Rejection.values().length;
+
+    private final long[] mStageNanos = new long[STAGE_COUNT];
+    private final int[] mRejections = new int[REJECTION_COUNT];
+    int mSampledPixels;
+    int mDistinctColors;
+    int mEdgeColors;
+    int mTextCandidates;
+    boolean mBackgroundFallback;
+    int mFallbacks;
+
+    ColorArtMetrics() {
+    }
+
+    void reset() {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            mStageNanos[i] = 0;
+        }
+        for (int i = 0; i < REJECTION_COUNT; i++) {
+            mRejections[i] = 0;
+        }
+        mSampledPixels = 0;
+        mDistinctColors = 0;
+        mEdgeColors = 0;
+        mTextCandidates = 0;
+        mBackgroundFallback = false;
+        mFallbacks = 0;
+    }
+
+    void addStageNanos(Stage stage, long nanos) {
+        mStageNanos[stage.ordinal()] += nanos;
+    }
+
+    void reject(Rejection rejection) {
+        mRejections[rejection.ordinal()]++;
+    }
+
+    void reject(Rejection rejection, int count) {
+        mRejections[rejection.ordinal()] += count;
+    }
+
+    public long getStageNanos(Stage stage) {
+        return mStageNanos[stage.ordinal()];
+    }
+
+    public long getTotalNanos() {
+        long total = 0;
+        for (long nanos : mStageNanos) {
+            total += nanos;
+        }
+        return total;
+    }
+
+    public int getRejections(Rejection rejection) {
+        return mRejections[rejection.ordinal()];
+    }
+
+    /**
+     * @return the number of pixels analyzed, after sampling
+     */
+    public int getSampledPixels() {
+        return mSampledPixels;
+    }
+
+    /**
+     * @return the number of distinct colors among the analyzed pixels
+     */
+    public int getDistinctColors() {
+        return mDistinctColors;
+    }
+
+    /**
+     * @return the number of distinct colors along the left edge
+     */
+    public int getEdgeColors() {
+        return mEdgeColors;
+    }
+
+    /**
+     * @return the number of colors considered for the primary, secondary and detail colors
+     */
+    public int getTextCandidates() {
+        return mTextCandidates;
+    }
+
+    /**
+     * @return whether no left edge color was common enough, so the background fell back to
+     * black
+     */
+    public boolean isBackgroundFallback() {
+        return mBackgroundFallback;
+    }
+
+    /**
+     * @return whether no color qualified as primary color, so it fell back to black or white
+     */
+    public boolean isPrimaryFallback() {
+        return (mFallbacks & AnalysisEngine.FALLBACK_PRIMARY) != 0;
+    }
+
+    public boolean isSecondaryFallback() {
+        return (mFallbacks & AnalysisEngine.FALLBACK_SECONDARY) != 0;
+    }
+
+    public boolean isDetailFallback() {
+        return (mFallbacks & AnalysisEngine.FALLBACK_DETAIL) != 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ColorArtMetrics{");
+        for (Stage stage : Stage.values()) {
+            builder.append(stage).append('=').append(getStageNanos(stage)).append("ns, ");
+        }
+        for (Rejection rejection : Rejection.values()) {
+            builder.append(rejection).append('=').append(getRejections(rejection)).append(", ");
+        }
+        return builder.append("sampledPixels=").append(mSampledPixels)
+                .append(", distinctColors=").append(mDistinctColors)
+                .append(", edgeColors=").append(mEdgeColors)
+                .append(", textCandidates=").append(mTextCandidates)
+                .append(", fallbacks=").append(mBackgroundFallback ? "background " : "")
+                .append(isPrimaryFallback() ? "primary " : "")
+                .append(isSecondaryFallback() ? "secondary " : "")
+                .append(isDetailFallback() ? "detail" : "")
+                .append('}').toString();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The dominant colors of an image, ranked by how many of its pixels they cover, together
+ * with the four colors {@code ColorArt} picks. Enable it with
+ * {@code ColorArt.Options.Builder.palette}; both come out of the same pass over the pixels.
+ */
+public final class ColorArtPalette {
+    /**
+     * A rough HSL classification of a swatch. Lightness decides first, so a swatch is
+     * {@link #DARK} or {@link #LIGHT} whatever its saturation.
+     */
+    public enum Band {
+        /**
+         * Saturated, neither dark nor light.
+         */
+        VIBRANT,
+        /**
+         * Unsaturated, neither dark nor light.
+         */
+        MUTED,
+        /**
+         * Lightness below 0.3.
+         */
+        DARK,
+        /**
+         * Lightness above 0.75.
+         */
+        LIGHT
+    }
+
+    private static final float DARK_LIGHTNESS = 0.3f;
+    private static final float LIGHT_LIGHTNESS = 0.75f;
+    private static final float VIBRANT_SATURATION = 0.35f;
+
+    /**
+     * One representative color and the share of the image it stands for.
+     */
+    public static final class Swatch {
+        private final int mColor;
+        private final int mPopulation;
+        private final float mWeight;
+        private final float mHue;
+        private final float mSaturation;
+        private final float mLightness;
+        private final Band mBand;
+
+        Swatch(int color, int population, int totalPopulation) {
+            mColor = color;
+            mPopulation = population;
+            mWeight = (float) population / totalPopulation;
+
+            float[] hsl = new float[3];
+            ColorMath.toHsl(color, hsl);
+            mHue = hsl[0];
+            mSaturation = hsl[1];
+            mLightness = hsl[2];
+            if (mLightness < DARK_LIGHTNESS) {
+                mBand = Band.DARK;
+            } else if (mLightness > LIGHT_LIGHTNESS) {
+                mBand = Band.LIGHT;
+            } else if (mSaturation >= VIBRANT_SATURATION) {
+                mBand = Band.VIBRANT;
+            } else {
+                mBand = Band.MUTED;
+            }
+        }
+
+        public int getColor() {
+            return mColor;
+        }
+
+        /**
+         * @return the number of analyzed pixels this swatch stands for
+         */
+        public int getPopulation() {
+            return mPopulation;
+        }
+
+        /**
+         * @return the share of the analyzed pixels this swatch stands for, between 0 and 1
+         */
+        public float getWeight() {
+            return mWeight;
+        }
+
+        /**
+         * @return the hue in degrees, between 0 and 360
+         */
+        public float getHue() {
+            return mHue;
+        }
+
+        public float getSaturation() {
+            return mSaturation;
+        }
+
+        public float getLightness() {
+            return mLightness;
+        }
+
+        public Band getBand() {
+            return mBand;
+        }
+
+        @Override
+        public String toString() {
+            return "Swatch{color=#" + Integer.toHexString(mColor) + ", weight=" + mWeight
+                    + ", band=" + mBand + "}";
+        }
+    }
+
+    private final ColorArtResult mResult;
+    private final List<Swatch> mSwatches;
+
+    ColorArtPalette(ColorArtResult result, List<Swatch> swatches) {
+        mResult = result;
+        mSwatches = Collections.unmodifiableList(swatches);
+    }
+
+    /**
+     * @return the swatches, from the most to the least common
+     */
+    public List<Swatch> getSwatches() {
+        return mSwatches;
+    }
+
+    /**
+     * @return the most common swatch in {@code band}, or null if there is none
+     */
+    public Swatch getSwatch(Band band) {
+        for (Swatch swatch : mSwatches) {
+            if (swatch.mBand == band) {
+                return swatch;
+            }
+        }
+        return null;
+    }
+
+    public int getBackgroundColor() {
+        return mResult.getBackgroundColor();
+    }
+
+    public int getPrimaryColor() {
+        return mResult.getPrimaryColor();
+    }
+
+    public int getSecondaryColor() {
+        return mResult.getSecondaryColor();
+    }
+
+    public int getDetailColor() {
+        return mResult.getDetailColor();
+    }
+
+    public ColorArtResult toResult() {
+        return mResult;
+    }
+
+    @Override
+    public String toString() {
+        return "ColorArtPalette{" + mResult + ", swatches=" + mSwatches + "}";
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+
+/**
+ * Analyzes images on a plain JVM, from packed ARGB pixels or {@code java.awt.image} data,
+ * for instance to pick the colors of covers on a server ahead of time.
+ * <p>
+ * Every image is read at the points of a {@code sampleSize x sampleSize} grid, the
+ * nearest-neighbour sampling that {@code ColorArt} gets from
+ * {@code Bitmap.createScaledBitmap} by default, so only the sampled pixels are ever
+ * converted, however large the image. An analyzer reuses its buffers from one image to the
+ * next and is not thread-safe, keep one per thread:
+ * <pre>
+ * ColorArtRasterAnalyzer analyzer = new ColorArtRasterAnalyzer.Builder().trimBorders(true).build();
+ * ColorArtResult result = analyzer.analyze(ImageIO.read(file));
+ * </pre>
+ */
+public final class ColorArtRasterAnalyzer {
+    private final AnalysisEngine mEngine = new AnalysisEngine();
+    private final int mSampleSize;
+    private final int[] mPixels;
+    // the source column of each sample column, for the last image size
+    private final int[] mColumns;
+    private int[] mSamples = new int[4];
+
+    public ColorArtRasterAnalyzer() {
+        this(new Builder());
+    }
+
+    private ColorArtRasterAnalyzer(Builder builder) {
+        mSampleSize = builder.mSampleSize;
+        mPixels = new int[mSampleSize * mSampleSize];
+        mColumns = new int[mSampleSize];
+        mEngine.setMaxTextCandidates(builder.mMaxTextCandidates);
+        mEngine.setParallelThreshold(builder.mParallelThreshold);
+        mEngine.setDistance(builder.mDistance);
+        mEngine.setContrast(builder.mContrast);
+        mEngine.setMinAlpha(builder.mAlphaCutoff);
+        mEngine.setTrimBorders(builder.mTrimBorders);
+    }
+
+    /**
+     * Analyzes raw pixel data, laid out row by row with no padding between rows.
+     *
+     * @param argb the pixels as packed ARGB ints, {@code width * height} long
+     */
+    public ColorArtResult analyze(int[] argb, int width, int height) {
+        checkSize(width, height);
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("argb must hold at least width * height pixels");
+        }
+        int sampleSize = mSampleSize;
+        mapColumns(width);
+        for (int y = 0; y < sampleSize; y++) {
+            int sourceRow = (y * height / sampleSize) * width;
+            int rowStart = y * sampleSize;
+            for (int x = 0; x < sampleSize; x++) {
+                mPixels[rowStart + x] = argb[sourceRow + mColumns[x]];
+            }
+        }
+        return analyzeSample();
+    }
+
+    public ColorArtResult analyze(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        checkSize(width, height);
+        int sampleSize = mSampleSize;
+        mapColumns(width);
+        for (int y = 0; y < sampleSize; y++) {
+            int sourceY = y * height / sampleSize;
+            int rowStart = y * sampleSize;
+            for (int x = 0; x < sampleSize; x++) {
+                mPixels[rowStart + x] = image.getRGB(mColumns[x], sourceY);
+            }
+        }
+        return analyzeSample();
+    }
+
+    /**
+     * Analyzes a raster without a color model. Its bands are read as gray, gray and alpha,
+     * RGB or RGBA, depending on how many there are; samples wider than 8 bits are scaled
+     * down to 8.
+     *
+     * @throws IllegalArgumentException if the raster has more than 4 bands
+     */
+    public ColorArtResult analyze(Raster raster) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        checkSize(width, height);
+        int bands = raster.getNumBands();
+        if (bands > 4) {
+            throw new IllegalArgumentException("Expected 1 to 4 bands, got " + bands);
+        }
+        int shift = Math.max(0, raster.getSampleModel().getSampleSize(0) - 8);
+        int minX = raster.getMinX();
+        int minY = raster.getMinY();
+        int sampleSize = mSampleSize;
+        mapColumns(width);
+        for (int y = 0; y < sampleSize; y++) {
+            int sourceY = minY + y * height / sampleSize;
+            int rowStart = y * sampleSize;
+            for (int x = 0; x < sampleSize; x++) {
+                mSamples = raster.getPixel(minX + mColumns[x], sourceY, mSamples);
+                mPixels[rowStart + x] = toArgb(mSamples, bands, shift);
+            }
+        }
+        return analyzeSample();
+    }
+
+    private static int toArgb(int[] samples, int bands, int shift) {
+        int r = samples[0] >> shift;
+        int g;
+        int b;
+        int a = 0xFF;
+        if (bands <= 2) {
+            g = r;
+            b = r;
+            if (bands == 2) {
+                a = samples[1] >> shift;
+            }
+        } else {
+            g = samples[1] >> shift;
+            b = samples[2] >> shift;
+            if (bands == 4) {
+                a = samples[3] >> shift;
+            }
+        }
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private void mapColumns(int width) {
+        for (int x = 0; x < mSampleSize; x++) {
+            mColumns[x] = x * width / mSampleSize;
+        }
+    }
+
+    private ColorArtResult analyzeSample() {
+        AnalysisEngine engine = mEngine;
+        engine.analyze(mPixels, mSampleSize, mSampleSize);
+        return new ColorArtResult(engine.getBackgroundColor(), engine.getPrimaryColor(),
+                engine.getSecondaryColor(), engine.getDetailColor());
+    }
+
+    private static void checkSize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("width and height must be > 0");
+        }
+    }
+
+    public static final class Builder {
+        private int mSampleSize = AnalysisEngine.DEFAULT_SAMPLE_SIZE;
+        private int mMaxTextCandidates;
+        private int mParallelThreshold = AnalysisEngine.DEFAULT_PARALLEL_THRESHOLD;
+        private ColorDistance mDistance = ColorDistance.RGB;
+        private ColorContrast mContrast = ColorContrast.LEGACY;
+        private int mAlphaCutoff;
+        private boolean mTrimBorders;
+
+        /**
+         * Sets the width and height of the sample grid. Defaults to 120, like {@code ColorArt}.
+         */
+        public Builder sampleSize(int sampleSize) {
+            if (sampleSize <= 0) {
+                throw new IllegalArgumentException("sampleSize must be > 0");
+            }
+            mSampleSize = sampleSize;
+            return this;
+        }
+
+        /**
+         * See {@code ColorArt.Options.Builder.quantize}. Disabled (0) by default.
+         */
+        public Builder quantize(int maxColors) {
+            if (maxColors < 0) {
+                throw new IllegalArgumentException("maxColors must be >= 0");
+            }
+            mMaxTextCandidates = maxColors;
+            return this;
+        }
+
+        /**
+         * Sets the number of sampled pixels from which the color counting is split across
+         * all cores. Defaults to 512 x 512.
+         */
+        public Builder parallelThreshold(int pixelCount) {
+            if (pixelCount <= 0) {
+                throw new IllegalArgumentException("pixelCount must be > 0");
+            }
+            mParallelThreshold = pixelCount;
+            return this;
+        }
+
+        public Builder distance(ColorDistance distance) {
+            if (distance == null) {
+                throw new IllegalArgumentException("distance must not be null");
+            }
+            mDistance = distance;
+            return this;
+        }
+
+        public Builder contrast(ColorContrast contrast) {
+            if (contrast == null) {
+                throw new IllegalArgumentException("contrast must not be null");
+            }
+            mContrast = contrast;
+            return this;
+        }
+
+        /**
+         * See {@code ColorArt.Options.Builder.alphaCutoff}. Disabled (0) by default.
+         */
+        public Builder alphaCutoff(int minAlpha) {
+            if (minAlpha < 0 || minAlpha > 255) {
+                throw new IllegalArgumentException("minAlpha must be between 0 and 255");
+            }
+            mAlphaCutoff = minAlpha;
+            return this;
+        }
+
+        /**
+         * See {@code ColorArt.Options.Builder.trimBorders}. Disabled by default.
+         */
+        public Builder trimBorders(boolean trimBorders) {
+            mTrimBorders = trimBorders;
+            return this;
+        }
+
+        int getSampleSize() {
+            return mSampleSize;
+        }
+
+        /**
+         * Identifies the colors these settings produce, for opening a {@link ColorArtStore}
+         * that holds their results. It matches {@code ColorArt.Options.getAlgorithmVersion()}
+         * for the same settings, so it is {@code ColorArt.ALGORITHM_VERSION} for the defaults.
+         */
+        public int getAlgorithmVersion() {
+            // encoded like ColorArt.Options: the grid stands in for SCALED, over the whole image
+            return AnalysisEngine.algorithmVersion(
+                    mSampleSize - AnalysisEngine.DEFAULT_SAMPLE_SIZE,
+                    0,
+                    0,
+                    mMaxTextCandidates,
+                    mDistance.ordinal(),
+                    mContrast.ordinal(),
+                    0,
+                    0,
+                    0,
+                    0,
+                    mAlphaCutoff,
+                    mTrimBorders ? 1 : 0);
+        }
+
+        public ColorArtRasterAnalyzer build() {
+            return new ColorArtRasterAnalyzer(this);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+/**
+ * The colors picked for an image, detached from the pixels they were computed from.
+ */
+public final class ColorArtResult {
+    private final int mBackgroundColor;
+    private final int mPrimaryColor;
+    private final int mSecondaryColor;
+    private final int mDetailColor;
+
+    public ColorArtResult(int backgroundColor, int primaryColor, int secondaryColor, int detailColor) {
+        mBackgroundColor = backgroundColor;
+        mPrimaryColor = primaryColor;
+        mSecondaryColor = secondaryColor;
+        mDetailColor = detailColor;
+    }
+
+    public int getBackgroundColor() {
+        return mBackgroundColor;
+    }
+
+    public int getPrimaryColor() {
+        return mPrimaryColor;
+    }
+
+    public int getSecondaryColor() {
+        return mSecondaryColor;
+    }
+
+    public int getDetailColor() {
+        return mDetailColor;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ColorArtResult)) {
+            return false;
+        }
+        ColorArtResult other = (ColorArtResult) o;
+        return mBackgroundColor == other.mBackgroundColor
+                && mPrimaryColor == other.mPrimaryColor
+                && mSecondaryColor == other.mSecondaryColor
+                && mDetailColor == other.mDetailColor;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mBackgroundColor;
+        result = 31 * result + mPrimaryColor;
+        result = 31 * result + mSecondaryColor;
+        result = 31 * result + mDetailColor;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ColorArtResult{background=#" + Integer.toHexString(mBackgroundColor)
+                + ", primary=#" + Integer.toHexString(mPrimaryColor)
+                + ", secondary=#" + Integer.toHexString(mSecondaryColor)
+                + ", detail=#" + Integer.toHexString(mDetailColor) + "}";
+    }
+}
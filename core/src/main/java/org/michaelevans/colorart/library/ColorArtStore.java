@@ -0,0 +1,391 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A persistent table of {@link ColorArtResult}s keyed by a 64-bit image key, so results
+ * survive process restarts.
+ * <p>
+ * The file is a 16 byte header followed by fixed-size records:
+ * <pre>
+ * header: int magic, int format version, int record count, int reserved
+ * record: long key, int background, int primary, int secondary, int detail, int algorithm version
+ * </pre>
+ * It is read and written through a {@link MappedByteBuffer}, and an in-memory index maps
+ * each key to its record, so a lookup neither deserializes nor allocates. Records written
+ * by a different {@code ColorArt.ALGORITHM_VERSION} are ignored, and dropped the next time
+ * the file is compacted.
+ * <p>
+ * Instances are thread-safe. Only one instance should have a given file open at a time.
+ * Once closed, every method but {@link #close()} throws an {@link IllegalStateException}.
+ */
+public final class ColorArtStore implements Closeable {
+    private static final int MAGIC = 0x43415254; // "CART"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int OFFSET_RECORD_COUNT = 8;
+
+    private static final int RECORD_SIZE = 28;
+    private static final int OFFSET_COLORS = 8;
+    private static final int OFFSET_VERSION = 24;
+
+    private static final int MIN_CAPACITY = 64;
+
+    private final int mAlgorithmVersion;
+    private final File mPath;
+    private RandomAccessFile mFile;
+    private FileChannel mChannel;
+    private MappedByteBuffer mBuffer;
+    private int mCapacity;
+    private int mRecordCount;
+
+    // open-addressing index from key to record number + 1, 0 marks an empty slot
+    private long[] mIndexKeys;
+    private int[] mIndexRecords;
+    private int mIndexSize;
+
+    /**
+     * Opens or creates a store that accepts results of the current {@code ColorArt} version,
+     * analyzed with the default options. Results of other options belong in a store opened
+     * with their own version, such as {@code ColorArt.Options.getAlgorithmVersion()}.
+     */
+    public static ColorArtStore open(File file) throws IOException {
+        return open(file, AnalysisEngine.ALGORITHM_VERSION);
+    }
+
+    /**
+     * Opens or creates a store that only returns records written with {@code algorithmVersion}.
+     */
+    public static ColorArtStore open(File file, int algorithmVersion) throws IOException {
+        ColorArtStore store = new ColorArtStore(file, algorithmVersion);
+        // a new algorithm version leaves most of an old file stale, reclaim it right away
+        if (store.mRecordCount - store.mIndexSize > store.mIndexSize) {
+            try {
+                store.compact();
+            } catch (IOException e) {
+                store.close();
+                throw e;
+            }
+        }
+        return store;
+    }
+
+    private ColorArtStore(File file, int algorithmVersion) throws IOException {
+        mAlgorithmVersion = algorithmVersion;
+        mPath = file;
+        openFile();
+    }
+
+    private void openFile() throws IOException {
+        mFile = new RandomAccessFile(mPath, "rw");
+        mChannel = mFile.getChannel();
+        try {
+            load();
+        } catch (IOException e) {
+            mBuffer = null;
+            mFile.close();
+            throw e;
+        }
+    }
+
+    private void load() throws IOException {
+        long length = mChannel.size();
+        int storedRecords = 0;
+        if (length >= HEADER_SIZE) {
+            MappedByteBuffer header = mChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) == MAGIC && header.getInt(4) == FORMAT_VERSION) {
+                // never trust a count that runs past the end of a truncated file
+                long fitting = (length - HEADER_SIZE) / RECORD_SIZE;
+                storedRecords = (int) Math.min(Math.max(header.getInt(OFFSET_RECORD_COUNT), 0), fitting);
+            }
+            // anything else is not a store we understand; it is only a cache, so start over
+        }
+
+        map(Math.max(MIN_CAPACITY, storedRecords));
+        mBuffer.putInt(0, MAGIC);
+        mBuffer.putInt(4, FORMAT_VERSION);
+        setRecordCount(storedRecords);
+
+        resetIndex(storedRecords);
+        for (int record = 0; record < storedRecords; record++) {
+            int offset = recordOffset(record);
+            if (mBuffer.getInt(offset + OFFSET_VERSION) == mAlgorithmVersion) {
+                indexPut(mBuffer.getLong(offset), record);
+            }
+        }
+    }
+
+    /**
+     * Copies the colors stored for {@code key} into {@code colors} as background, primary,
+     * secondary and detail.
+     *
+     * @return false if nothing current is stored for {@code key}
+     */
+    public synchronized boolean get(long key, int[] colors) {
+        checkOpen();
+        int record = indexGet(key);
+        if (record < 0) {
+            return false;
+        }
+        int offset = recordOffset(record) + OFFSET_COLORS;
+        colors[0] = mBuffer.getInt(offset);
+        colors[1] = mBuffer.getInt(offset + 4);
+        colors[2] = mBuffer.getInt(offset + 8);
+        colors[3] = mBuffer.getInt(offset + 12);
+        return true;
+    }
+
+    /**
+     * @return the result stored for {@code key}, or null if there is none
+     */
+    public synchronized ColorArtResult get(long key) {
+        checkOpen();
+        int record = indexGet(key);
+        if (record < 0) {
+            return null;
+        }
+        int offset = recordOffset(record) + OFFSET_COLORS;
+        return new ColorArtResult(mBuffer.getInt(offset), mBuffer.getInt(offset + 4),
+                mBuffer.getInt(offset + 8), mBuffer.getInt(offset + 12));
+    }
+
+    public synchronized boolean contains(long key) {
+        checkOpen();
+        return indexGet(key) >= 0;
+    }
+
+    /**
+     * Stores {@code result} for {@code key}, replacing a current record in place or appending
+     * a new one.
+     */
+    public synchronized void put(long key, ColorArtResult result) throws IOException {
+        put(key, result.getBackgroundColor(), result.getPrimaryColor(),
+                result.getSecondaryColor(), result.getDetailColor());
+    }
+
+    public synchronized void put(long key, int backgroundColor, int primaryColor,
+                                 int secondaryColor, int detailColor) throws IOException {
+        checkOpen();
+        int record = indexGet(key);
+        if (record < 0) {
+            if (mRecordCount == mCapacity) {
+                map(mCapacity * 2);
+            }
+            record = mRecordCount;
+            writeRecord(record, key, backgroundColor, primaryColor, secondaryColor, detailColor);
+            // publish the record before counting it, so a crash never exposes a half-written one
+            setRecordCount(mRecordCount + 1);
+            indexPut(key, record);
+        } else {
+            writeRecord(record, key, backgroundColor, primaryColor, secondaryColor, detailColor);
+        }
+    }
+
+    /**
+     * @return the number of current records
+     */
+    public synchronized int size() {
+        checkOpen();
+        return mIndexSize;
+    }
+
+    /**
+     * Rewrites the file with only the records of the current algorithm version and shrinks it
+     * to fit.
+     * <p>
+     * The records are written to a fresh file that is then renamed over this one, because
+     * truncating a file that is still mapped can crash a reader of the old mapping. Where an
+     * open file can't be replaced, as on Windows, this throws an {@link IOException} and the
+     * store stays as it was.
+     */
+    public synchronized void compact() throws IOException {
+        checkOpen();
+        int current = 0;
+        for (int record = 0; record < mRecordCount; record++) {
+            if (mBuffer.getInt(recordOffset(record) + OFFSET_VERSION) == mAlgorithmVersion) {
+                current++;
+            }
+        }
+        ByteBuffer records = ByteBuffer.allocate(HEADER_SIZE + current * RECORD_SIZE);
+        records.putInt(MAGIC);
+        records.putInt(FORMAT_VERSION);
+        records.putInt(0);
+        records.putInt(0);
+        for (int record = 0; record < mRecordCount; record++) {
+            int from = recordOffset(record);
+            if (mBuffer.getInt(from + OFFSET_VERSION) != mAlgorithmVersion) {
+                continue;
+            }
+            for (int i = 0; i < RECORD_SIZE; i += 4) {
+                records.putInt(mBuffer.getInt(from + i));
+            }
+        }
+        records.putInt(OFFSET_RECORD_COUNT, current);
+        records.flip();
+
+        File compacted = new File(mPath.getPath() + ".compact");
+        RandomAccessFile out = new RandomAccessFile(compacted, "rw");
+        try {
+            out.setLength(0);
+            FileChannel channel = out.getChannel();
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+            channel.force(true);
+        } finally {
+            out.close();
+        }
+
+        mBuffer.force();
+        mBuffer = null;
+        mFile.close();
+        boolean replaced = compacted.renameTo(mPath);
+        if (!replaced) {
+            compacted.delete();
+        }
+        openFile();
+        if (!replaced) {
+            throw new IOException("Unable to replace " + mPath + " with its compacted copy");
+        }
+    }
+
+    /**
+     * Writes pending changes through to the storage device.
+     */
+    public synchronized void flush() {
+        checkOpen();
+        mBuffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (mBuffer != null) {
+            mBuffer.force();
+            mBuffer = null;
+        }
+        mFile.close();
+    }
+
+    /**
+     * Hashes a string key such as a URL into a 64-bit store key (FNV-1a).
+     */
+    public static long hashKey(CharSequence key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private void checkOpen() {
+        if (mBuffer == null) {
+            throw new IllegalStateException("store is closed");
+        }
+    }
+
+    private void map(int capacity) throws IOException {
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        mCapacity = capacity;
+    }
+
+    private void setRecordCount(int count) {
+        mRecordCount = count;
+        mBuffer.putInt(OFFSET_RECORD_COUNT, count);
+    }
+
+    private void writeRecord(int record, long key, int backgroundColor, int primaryColor,
+                             int secondaryColor, int detailColor) {
+        int offset = recordOffset(record);
+        mBuffer.putLong(offset, key);
+        mBuffer.putInt(offset + OFFSET_COLORS, backgroundColor);
+        mBuffer.putInt(offset + OFFSET_COLORS + 4, primaryColor);
+        mBuffer.putInt(offset + OFFSET_COLORS + 8, secondaryColor);
+        mBuffer.putInt(offset + OFFSET_COLORS + 12, detailColor);
+        mBuffer.putInt(offset + OFFSET_VERSION, mAlgorithmVersion);
+    }
+
+    private static int recordOffset(int record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+
+    private void resetIndex(int expected) {
+        int tableSize = 16;
+        while (tableSize < expected * 2) {
+            tableSize <<= 1;
+        }
+        mIndexKeys = new long[tableSize];
+        mIndexRecords = new int[tableSize];
+        mIndexSize = 0;
+    }
+
+    private int indexGet(long key) {
+        int mask = mIndexKeys.length - 1;
+        int slot = hash(key) & mask;
+        int entry;
+        while ((entry = mIndexRecords[slot]) != 0) {
+            if (mIndexKeys[slot] == key) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void indexPut(long key, int record) {
+        if ((mIndexSize + 1) * 2 > mIndexKeys.length) {
+            long[] keys = mIndexKeys;
+            int[] records = mIndexRecords;
+            mIndexKeys = new long[keys.length * 2];
+            mIndexRecords = new int[keys.length * 2];
+            mIndexSize = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (records[slot] != 0) {
+                    indexPut(keys[slot], records[slot] - 1);
+                }
+            }
+        }
+
+        int mask = mIndexKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (mIndexRecords[slot] != 0) {
+            if (mIndexKeys[slot] == key) {
+                mIndexRecords[slot] = record + 1;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        mIndexKeys[slot] = key;
+        mIndexRecords[slot] = record + 1;
+        mIndexSize++;
+    }
+
+    private static int hash(long key) {
+        int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+/**
+ * How much the primary, secondary and detail colors must contrast with the background.
+ * Set with {@code ColorArt.Options.Builder.contrast}.
+ */
+public enum ColorContrast {
+    /**
+     * A luma ratio of 1.6, computed on gamma-encoded channels. This is the default.
+     */
+    LEGACY(0),
+    /**
+     * The WCAG 2 contrast ratio of 3:1 required for large text.
+     */
+    WCAG_AA_LARGE(3),
+    /**
+     * The WCAG 2 contrast ratio of 4.5:1 required for normal text.
+     */
+    WCAG_AA(4.5f);
+
+    final float mMinimumRatio;
+
+    ColorContrast(float minimumRatio) {
+        mMinimumRatio = minimumRatio;
+    }
+}
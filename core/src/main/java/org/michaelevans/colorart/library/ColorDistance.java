@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+/**
+ * How the primary, secondary and detail colors are told apart from each other. Set with
+ * {@code ColorArt.Options.Builder.distance}.
+ */
+public enum ColorDistance {
+    /**
+     * At least one RGB channel differs by a quarter of its range. This is the default.
+     */
+    RGB(0),
+    /**
+     * The CIELAB distance Delta E*76 is at least 20, about a clearly visible difference between
+     * two colors side by side.
+     */
+    CIE76(20),
+    /**
+     * The CIEDE2000 distance is at least 12. More even across hues than {@link #CIE76},
+     * which overstates differences between saturated colors.
+     */
+    CIEDE2000(12);
+
+    final float mMinimumDelta;
+
+    ColorDistance(float minimumDelta) {
+        mMinimumDelta = minimumDelta;
+    }
+}
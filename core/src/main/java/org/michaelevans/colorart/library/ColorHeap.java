@@ -0,0 +1,127 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+/**
+ * Hands out candidate colors from the most to the least frequent, without sorting all of
+ * them up front.
+ * <p>
+ * Candidates are stored in parallel primitive arrays and ordered by a binary max-heap of
+ * their indices. Building the heap is linear and each {@link #next()} is logarithmic, so
+ * a caller that stops after the first few colors never pays for a full sort. Colors with
+ * equal counts come out in the order they were added. Each candidate can carry its
+ * luminance, so it is computed only once per color.
+ */
+final class ColorHeap {
+    private int[] mColors = new int[64];
+    private int[] mCounts = new int[64];
+    private int[] mLuminances = new int[64];
+    private int[] mHeap = new int[64];
+    private int mSize;
+    private int mHeapSize = -1;
+
+    void clear() {
+        mSize = 0;
+        mHeapSize = -1;
+    }
+
+    void add(int color, int count) {
+        add(color, count, 0);
+    }
+
+    void add(int color, int count, int luminance) {
+        if (mSize == mColors.length) {
+            mColors = grow(mColors);
+            mCounts = grow(mCounts);
+            mLuminances = grow(mLuminances);
+            mHeap = new int[mColors.length];
+        }
+        mColors[mSize] = color;
+        mCounts[mSize] = count;
+        mLuminances[mSize] = luminance;
+        mSize++;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the index of the most frequent color not returned yet, or -1 once they have
+     * all been returned. No colors may be added after the first call until {@link #clear()}.
+     */
+    int next() {
+        if (mHeapSize < 0) {
+            for (int i = 0; i < mSize; i++) {
+                mHeap[i] = i;
+            }
+            mHeapSize = mSize;
+            for (int i = mHeapSize / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+        if (mHeapSize == 0) {
+            return -1;
+        }
+        int top = mHeap[0];
+        mHeap[0] = mHeap[--mHeapSize];
+        siftDown(0);
+        return top;
+    }
+
+    int colorAt(int index) {
+        return mColors[index];
+    }
+
+    int countAt(int index) {
+        return mCounts[index];
+    }
+
+    int luminanceAt(int index) {
+        return mLuminances[index];
+    }
+
+    private void siftDown(int position) {
+        int entry = mHeap[position];
+        int half = mHeapSize / 2;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < mHeapSize && comesBefore(mHeap[right], mHeap[child])) {
+                child = right;
+            }
+            if (!comesBefore(mHeap[child], entry)) {
+                break;
+            }
+            mHeap[position] = mHeap[child];
+            position = child;
+        }
+        mHeap[position] = entry;
+    }
+
+    private boolean comesBefore(int a, int b) {
+        int countA = mCounts[a];
+        int countB = mCounts[b];
+        return countA > countB || (countA == countB && a < b);
+    }
+
+    private static int[] grow(int[] array) {
+        int[] grown = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+}
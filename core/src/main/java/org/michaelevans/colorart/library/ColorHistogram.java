@@ -0,0 +1,203 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import java.util.Arrays;
+
+/**
+ * Counts occurrences of ARGB colors without boxing.
+ * <p>
+ * Colors are kept in insertion order in two parallel arrays, so they can be
+ * walked without allocating:
+ * <pre>
+ * for (int i = 0; i &lt; histogram.size(); i++) {
+ *     int color = histogram.colorAt(i);
+ *     int count = histogram.countAt(i);
+ * }
+ * </pre>
+ * A lookup table with open addressing maps each color to its index. Call
+ * {@link #clear()} to reuse the same instance for the next image.
+ */
+public class ColorHistogram {
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private int[] mColors;
+    private int[] mCounts;
+    // index + 1 of the color stored in each slot, 0 marks an empty slot
+    private int[] mSlots;
+    private int mMask;
+    private int mSize;
+
+    public ColorHistogram() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedColors how many distinct colors to make room for up front
+     */
+    public ColorHistogram(int expectedColors) {
+        int capacity = Math.max(expectedColors, 16);
+        mColors = new int[capacity];
+        mCounts = new int[capacity];
+        mSlots = new int[tableSizeFor(capacity)];
+        mMask = mSlots.length - 1;
+    }
+
+    public void add(int color) {
+        add(color, 1);
+    }
+
+    /**
+     * Adds {@code count} occurrences of {@code color}. A negative count takes occurrences
+     * away again, see {@link #removeEmpty()}.
+     */
+    public void add(int color, int count) {
+        int slot = hash(color) & mMask;
+        int entry;
+        while ((entry = mSlots[slot]) != 0) {
+            if (mColors[entry - 1] == color) {
+                mCounts[entry - 1] += count;
+                return;
+            }
+            slot = (slot + 1) & mMask;
+        }
+
+        if (mSize == mColors.length) {
+            growEntries();
+        }
+        mColors[mSize] = color;
+        mCounts[mSize] = count;
+        mSize++;
+        mSlots[slot] = mSize;
+
+        // keep the table at most half full so probe sequences stay short
+        if (mSize * 2 > mSlots.length) {
+            rehash(mSlots.length * 2);
+        }
+    }
+
+    /**
+     * Adds every color of {@code other} with its count, in {@code other}'s order.
+     */
+    public void addAll(ColorHistogram other) {
+        for (int i = 0; i < other.mSize; i++) {
+            add(other.mColors[i], other.mCounts[i]);
+        }
+    }
+
+    public int getCount(int color) {
+        int index = indexOf(color);
+        return index >= 0 ? mCounts[index] : 0;
+    }
+
+    /**
+     * @return the index of {@code color} for {@link #colorAt} and {@link #countAt}, or -1 if
+     * it hasn't been added
+     */
+    public int indexOf(int color) {
+        int slot = hash(color) & mMask;
+        int entry;
+        while ((entry = mSlots[slot]) != 0) {
+            if (mColors[entry - 1] == color) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of distinct colors
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public int colorAt(int index) {
+        return mColors[index];
+    }
+
+    public int countAt(int index) {
+        return mCounts[index];
+    }
+
+    /**
+     * Drops the colors whose count went down to 0, keeping the others in order and the
+     * allocated storage.
+     */
+    public void removeEmpty() {
+        int size = 0;
+        for (int i = 0; i < mSize; i++) {
+            if (mCounts[i] != 0) {
+                mColors[size] = mColors[i];
+                mCounts[size] = mCounts[i];
+                size++;
+            }
+        }
+        if (size < mSize) {
+            mSize = size;
+            rehash(mSlots.length);
+        }
+    }
+
+    /**
+     * Removes all colors but keeps the allocated storage.
+     */
+    public void clear() {
+        if (mSize > 0) {
+            Arrays.fill(mSlots, 0);
+            mSize = 0;
+        }
+    }
+
+    private void growEntries() {
+        int capacity = mColors.length * 2;
+        int[] colors = new int[capacity];
+        int[] counts = new int[capacity];
+        System.arraycopy(mColors, 0, colors, 0, mSize);
+        System.arraycopy(mCounts, 0, counts, 0, mSize);
+        mColors = colors;
+        mCounts = counts;
+    }
+
+    private void rehash(int tableSize) {
+        if (tableSize == mSlots.length) {
+            Arrays.fill(mSlots, 0);
+        } else {
+            mSlots = new int[tableSize];
+            mMask = tableSize - 1;
+        }
+        for (int i = 0; i < mSize; i++) {
+            int slot = hash(mColors[i]) & mMask;
+            while (mSlots[slot] != 0) {
+                slot = (slot + 1) & mMask;
+            }
+            mSlots[slot] = i + 1;
+        }
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int size = Integer.highestOneBit(capacity * 2 - 1);
+        return size < capacity * 2 ? size * 2 : size;
+    }
+
+    private static int hash(int color) {
+        // neighbouring colors differ only in their low bits, spread them out
+        int h = color * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+/**
+ * Allocation-free color arithmetic used in the candidate loops of {@code ColorArt}.
+ * <p>
+ * Luminance is kept as an integer, scaled so that white is {@link #LUMINANCE_WHITE}, and
+ * every predicate works on integer channels. The thresholds are the ones ColorArt used
+ * with normalized doubles, converted to the equivalent integer bounds.
+ */
+final class ColorMath {
+    // Rec. 709 luma weights (0.2126, 0.7152, 0.0722) in units of 1 / 10000, which is exact
+    private static final int WEIGHT_RED = 2126;
+    private static final int WEIGHT_GREEN = 7152;
+    private static final int WEIGHT_BLUE = 722;
+
+    static final int LUMINANCE_WHITE = 255 * 10000;
+
+    // luminance < 0.5 * white
+    private static final int DARK_LUMINANCE = LUMINANCE_WHITE / 2;
+    // (hi + 0.05) / (lo + 0.05) > 1.6  <=>  5 * hi - 8 * lo > 0.15 * white
+    private static final int CONTRAST_OFFSET = LUMINANCE_WHITE * 15 / 100;
+
+    // |a - b| / 255 > 0.25
+    private static final int DISTINCT_CHANNEL_DIFFERENCE = 64;
+    // |a - b| / 255 < 0.03
+    private static final int GRAY_CHANNEL_SPREAD = 7;
+    // |a - b| / 255 < 0.07 on every channel
+    private static final int SIMILAR_CHANNEL_DIFFERENCE = 16;
+    // each channel / 255 > 0.91 or < 0.09
+    private static final int WHITE_CHANNEL = 233;
+    private static final int BLACK_CHANNEL = 22;
+
+    private ColorMath() {
+    }
+
+    static int alpha(int color) {
+        return color >>> 24;
+    }
+
+    static int red(int color) {
+        return (color >> 16) & 0xFF;
+    }
+
+    static int green(int color) {
+        return (color >> 8) & 0xFF;
+    }
+
+    static int blue(int color) {
+        return color & 0xFF;
+    }
+
+    /**
+     * @return the relative luminance of {@code color}, between 0 and {@link #LUMINANCE_WHITE}
+     */
+    static int luminance(int color) {
+        return WEIGHT_RED * red(color) + WEIGHT_GREEN * green(color) + WEIGHT_BLUE * blue(color);
+    }
+
+    static boolean isDark(int luminance) {
+        return luminance < DARK_LUMINANCE;
+    }
+
+    static boolean isContrasting(int luminanceA, int luminanceB) {
+        int high = Math.max(luminanceA, luminanceB);
+        int low = Math.min(luminanceA, luminanceB);
+        return 5 * high - 8 * low > CONTRAST_OFFSET;
+    }
+
+    static boolean isDistinct(int colorA, int colorB) {
+        int r = red(colorA);
+        int g = green(colorA);
+        int b = blue(colorA);
+        int r1 = red(colorB);
+        int g1 = green(colorB);
+        int b1 = blue(colorB);
+
+        if (Math.abs(r - r1) >= DISTINCT_CHANNEL_DIFFERENCE ||
+                Math.abs(g - g1) >= DISTINCT_CHANNEL_DIFFERENCE ||
+                Math.abs(b - b1) >= DISTINCT_CHANNEL_DIFFERENCE ||
+                Math.abs(alpha(colorA) - alpha(colorB)) >= DISTINCT_CHANNEL_DIFFERENCE) {
+            // check for grays, prevent multiple gray colors
+            return !(isGray(r, g, b) && isGray(r1, g1, b1));
+        }
+
+        return false;
+    }
+
+    /**
+     * @return whether the colors are close enough to pass for the same one
+     */
+    static boolean isSimilar(int colorA, int colorB) {
+        return Math.abs(red(colorA) - red(colorB)) < SIMILAR_CHANNEL_DIFFERENCE
+                && Math.abs(green(colorA) - green(colorB)) < SIMILAR_CHANNEL_DIFFERENCE
+                && Math.abs(blue(colorA) - blue(colorB)) < SIMILAR_CHANNEL_DIFFERENCE;
+    }
+
+    static boolean isBlackOrWhite(int color) {
+        int r = red(color);
+        int g = green(color);
+        int b = blue(color);
+        return (r >= WHITE_CHANNEL && g >= WHITE_CHANNEL && b >= WHITE_CHANNEL) ||
+                (r <= BLACK_CHANNEL && g <= BLACK_CHANNEL && b <= BLACK_CHANNEL);
+    }
+
+    /**
+     * Raises the HSV saturation of {@code color} to at least {@code minSaturation}, keeping
+     * its hue and value. Like {@code Color.HSVToColor}, an adjusted color is fully opaque.
+     *
+     * @param minSaturation the minimum saturation in 16.16 fixed point, see {@link #toFixed}
+     */
+    static int withMinimumSaturation(int color, int minSaturation) {
+        int r = red(color);
+        int g = green(color);
+        int b = blue(color);
+        int max = Math.max(r, Math.max(g, b));
+        int min = Math.min(r, Math.min(g, b));
+        long chroma = max - min;
+
+        // saturation = chroma / max
+        if (max == 0 || (chroma << 16) >= (long) minSaturation * max) {
+            return color;
+        }
+
+        if (chroma == 0) {
+            // grays have no hue, Color.colorToHSV reports them as red
+            int low = max - (int) (((long) minSaturation * max + 0x8000) >> 16);
+            return 0xFF000000 | (max << 16) | (low << 8) | low;
+        }
+
+        // at a fixed hue and value, max - channel grows linearly with saturation
+        long scale = (long) minSaturation * max;
+        long divisor = chroma << 16;
+        r = max - (int) (((max - r) * scale + divisor / 2) / divisor);
+        g = max - (int) (((max - g) * scale + divisor / 2) / divisor);
+        b = max - (int) (((max - b) * scale + divisor / 2) / divisor);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Writes the hue in degrees and the saturation and lightness between 0 and 1 of
+     * {@code color} to {@code hsl}.
+     */
+    static void toHsl(int color, float[] hsl) {
+        int r = red(color);
+        int g = green(color);
+        int b = blue(color);
+        int max = Math.max(r, Math.max(g, b));
+        int min = Math.min(r, Math.min(g, b));
+        float chroma = (max - min) / 255f;
+        float lightness = (max + min) / 510f;
+
+        float hue = 0;
+        float saturation = 0;
+        if (max != min) {
+            if (max == r) {
+                hue = ((g - b) / 255f / chroma) % 6;
+            } else if (max == g) {
+                hue = (b - r) / 255f / chroma + 2;
+            } else {
+                hue = (r - g) / 255f / chroma + 4;
+            }
+            hue *= 60;
+            if (hue < 0) {
+                hue += 360;
+            }
+            saturation = chroma / (1 - Math.abs(2 * lightness - 1));
+        }
+        hsl[0] = hue;
+        hsl[1] = saturation;
+        hsl[2] = lightness;
+    }
+
+    static int toFixed(float value) {
+        return Math.round(value * (1 << 16));
+    }
+
+    static boolean isGray(int color) {
+        return isGray(red(color), green(color), blue(color));
+    }
+
+    private static boolean isGray(int r, int g, int b) {
+        return Math.abs(r - g) <= GRAY_CHANNEL_SPREAD && Math.abs(r - b) <= GRAY_CHANNEL_SPREAD;
+    }
+}
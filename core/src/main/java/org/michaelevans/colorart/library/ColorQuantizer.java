@@ -0,0 +1,169 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import java.util.Arrays;
+
+/**
+ * Merges a histogram of exact colors into at most a given number of representative colors.
+ * <p>
+ * Colors are binned once by the top 5 bits of their red, green and blue channels. While
+ * there are too many bins they are regrouped a bit coarser, down to 1 bit per channel, and
+ * if even those 8 groups are too many the smallest group is merged into the one closest to
+ * it until they fit. Only the bins are regrouped, never the exact colors. Each group is
+ * represented by the count-weighted mean of its colors, alpha included.
+ */
+final class ColorQuantizer {
+    private static final int MAX_BITS = 5;
+
+    // the exact colors binned at MAX_BITS
+    private final ColorHistogram mBins = new ColorHistogram();
+    // the bins regrouped at fewer bits
+    private final ColorHistogram mGroups = new ColorHistogram();
+    // per group, its count and the sums of its alpha, red, green and blue weighted by count
+    private long[] mSums = new long[0];
+
+    /**
+     * Fills {@code out} with at most {@code maxColors} colors summarizing {@code colors}.
+     * When there are so few colors that no merging is needed they are copied unchanged.
+     *
+     * @param maxColors at least 1
+     */
+    void quantize(ColorHistogram colors, int maxColors, ColorHistogram out) {
+        out.clear();
+        if (colors.size() <= maxColors) {
+            for (int i = 0; i < colors.size(); i++) {
+                out.add(colors.colorAt(i), colors.countAt(i));
+            }
+            return;
+        }
+
+        // the only pass over the exact colors, apart from summing them up below
+        ColorHistogram bins = mBins;
+        bins.clear();
+        for (int i = 0; i < colors.size(); i++) {
+            bins.add(binOf(colors.colorAt(i)), colors.countAt(i));
+        }
+
+        ColorHistogram groups = bins;
+        int drop = 0;
+        while (groups.size() > maxColors && drop < MAX_BITS - 1) {
+            drop++;
+            mGroups.clear();
+            for (int bin = 0; bin < bins.size(); bin++) {
+                mGroups.add(coarsen(bins.colorAt(bin), drop), bins.countAt(bin));
+            }
+            groups = mGroups;
+        }
+
+        int groupCount = groups.size();
+        if (mSums.length < groupCount * 5) {
+            mSums = new long[groupCount * 5];
+        } else {
+            Arrays.fill(mSums, 0, groupCount * 5, 0L);
+        }
+        for (int i = 0; i < colors.size(); i++) {
+            int color = colors.colorAt(i);
+            int count = colors.countAt(i);
+            int group = groups.indexOf(coarsen(binOf(color), drop));
+            addTo(mSums, group * 5, color, count);
+        }
+
+        while (groupCount > maxColors) {
+            groupCount = mergeSmallest(mSums, groupCount);
+        }
+
+        for (int group = 0; group < groupCount; group++) {
+            int sum = group * 5;
+            long count = mSums[sum];
+            long half = count / 2;
+            int a = (int) ((mSums[sum + 1] + half) / count);
+            int r = (int) ((mSums[sum + 2] + half) / count);
+            int g = (int) ((mSums[sum + 3] + half) / count);
+            int b = (int) ((mSums[sum + 4] + half) / count);
+            out.add((a << 24) | (r << 16) | (g << 8) | b, (int) count);
+        }
+    }
+
+    private static void addTo(long[] sums, int sum, int color, long count) {
+        sums[sum] += count;
+        sums[sum + 1] += (color >>> 24) * count;
+        sums[sum + 2] += ((color >> 16) & 0xFF) * count;
+        sums[sum + 3] += ((color >> 8) & 0xFF) * count;
+        sums[sum + 4] += (color & 0xFF) * count;
+    }
+
+    /**
+     * Merges the least common group into the group whose mean is closest to its own, keeping
+     * the order of the others.
+     *
+     * @return the number of groups left
+     */
+    private static int mergeSmallest(long[] sums, int groupCount) {
+        int smallest = 0;
+        for (int group = 1; group < groupCount; group++) {
+            if (sums[group * 5] < sums[smallest * 5]) {
+                smallest = group;
+            }
+        }
+        int from = smallest * 5;
+        int closest = -1;
+        double closestDistance = Double.MAX_VALUE;
+        for (int group = 0; group < groupCount; group++) {
+            if (group == smallest) {
+                continue;
+            }
+            int to = group * 5;
+            double distance = 0;
+            for (int channel = 2; channel < 5; channel++) {
+                double difference = (double) sums[from + channel] / sums[from]
+                        - (double) sums[to + channel] / sums[to];
+                distance += difference * difference;
+            }
+            if (distance < closestDistance) {
+                closestDistance = distance;
+                closest = group;
+            }
+        }
+        for (int i = 0; i < 5; i++) {
+            sums[closest * 5 + i] += sums[from + i];
+        }
+        System.arraycopy(sums, from + 5, sums, from, (groupCount - smallest - 1) * 5);
+        return groupCount - 1;
+    }
+
+    /**
+     * @return the top {@link #MAX_BITS} bits of red, green and blue, one channel per byte
+     */
+    private static int binOf(int color) {
+        int shift = 8 - MAX_BITS;
+        int r = ((color >> 16) & 0xFF) >> shift;
+        int g = ((color >> 8) & 0xFF) >> shift;
+        int b = (color & 0xFF) >> shift;
+        return (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * @return {@code bin} with {@code drop} more bits dropped from each channel
+     */
+    private static int coarsen(int bin, int drop) {
+        int r = ((bin >> 16) & 0xFF) >> drop;
+        int g = ((bin >> 8) & 0xFF) >> drop;
+        int b = (bin & 0xFF) >> drop;
+        return (r << 16) | (g << 8) | b;
+    }
+}
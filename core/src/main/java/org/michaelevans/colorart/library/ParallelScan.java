@@ -0,0 +1,158 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Builds the image and left edge histograms of a large image on several threads.
+ * <p>
+ * The rows are split into one band per core. Each band is counted into its own pair of
+ * histograms, so the workers share no mutable state, and the partial histograms are then
+ * merged in band order. Because every histogram keeps colors in order of first
+ * occurrence, merging in band order yields exactly the histograms, order included, that a
+ * single pass over the rows would, and with them the same colors.
+ * <p>
+ * If counting a band fails on any thread, the first failure is rethrown on the calling
+ * thread once every band has finished, rather than merging partial histograms.
+ */
+final class ParallelScan {
+    private static final int BAND_COUNT = Runtime.getRuntime().availableProcessors();
+
+    private static ExecutorService sExecutor;
+
+    private final ColorHistogram[] mBandColors;
+    private final ColorHistogram[] mBandEdgeColors;
+
+    ParallelScan() {
+        this(BAND_COUNT);
+    }
+
+    /**
+     * @param bandCount how many bands to split the rows into, one per core by default
+     */
+    ParallelScan(int bandCount) {
+        mBandColors = new ColorHistogram[bandCount];
+        mBandEdgeColors = new ColorHistogram[bandCount];
+        for (int i = 0; i < bandCount; i++) {
+            mBandColors[i] = new ColorHistogram();
+            mBandEdgeColors[i] = new ColorHistogram();
+        }
+    }
+
+    static boolean isAvailable() {
+        return BAND_COUNT > 1;
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(Math.max(1, BAND_COUNT - 1), new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ColorArt-scan-" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Replaces the contents of {@code imageColors} and {@code edgeColors} with the
+     * histograms of all pixels and of the pixels in column 0.
+     */
+    void scan(final int[] pixels, final int width, final int height,
+              ColorHistogram imageColors, ColorHistogram edgeColors) {
+        final int bands = Math.min(mBandColors.length, height);
+        final AtomicInteger nextBand = new AtomicInteger();
+        final CountDownLatch remaining = new CountDownLatch(bands);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int band;
+                while ((band = nextBand.getAndIncrement()) < bands) {
+                    try {
+                        countBand(pixels, width, band * height / bands, (band + 1) * height / bands,
+                                mBandColors[band], mBandEdgeColors[band]);
+                    } catch (Throwable t) {
+                        // an OutOfMemoryError while a histogram grows, say; the caller rethrows it
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        remaining.countDown();
+                    }
+                }
+            }
+        };
+
+        // the caller takes bands too, so a busy pool only costs parallelism, never progress
+        ExecutorService executor = executor();
+        for (int i = 1; i < bands; i++) {
+            executor.execute(worker);
+        }
+        worker.run();
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                remaining.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Throwable t = failure.get();
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new IllegalStateException(t);
+        }
+
+        imageColors.clear();
+        edgeColors.clear();
+        for (int band = 0; band < bands; band++) {
+            imageColors.addAll(mBandColors[band]);
+            edgeColors.addAll(mBandEdgeColors[band]);
+        }
+    }
+
+    private static void countBand(int[] pixels, int width, int startRow, int endRow,
+                                  ColorHistogram imageColors, ColorHistogram edgeColors) {
+        imageColors.clear();
+        edgeColors.clear();
+        for (int y = startRow; y < endRow; y++) {
+            int rowStart = y * width;
+            edgeColors.add(pixels[rowStart]);
+            for (int i = rowStart, rowEnd = rowStart + width; i < rowEnd; i++) {
+                imageColors.add(pixels[i]);
+            }
+        }
+    }
+}
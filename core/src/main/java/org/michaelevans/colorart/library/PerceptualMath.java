@@ -0,0 +1,214 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+/**
+ * Perceptual color arithmetic behind {@link ColorDistance} and {@link ColorContrast}:
+ * linear-light luminance, CIELAB coordinates and the Delta E distances between them.
+ * <p>
+ * Gamma decoding and the cube root of the Lab conversion both go through lookup tables, so
+ * converting a color costs a few multiplications and no transcendental functions. Lab
+ * coordinates are written into caller-owned arrays, nothing here allocates.
+ * <p>
+ * CIEDE2000 takes its hue dependent weights from tables as well and reuses the chroma
+ * stored next to each color, which leaves one {@code atan2} and a handful of square roots
+ * per comparison.
+ */
+final class PerceptualMath {
+    /**
+     * Floats written by {@link #toLab} per color: L*, a*, b* and the chroma of a* and b*.
+     */
+    static final int LAB_SIZE = 4;
+
+    // D65 reference white
+    private static final double WHITE_X = 0.95047;
+    private static final double WHITE_Z = 1.08883;
+    private static final double EPSILON = 216.0 / 24389;
+    private static final double KAPPA = 24389.0 / 27;
+
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+    // the Lab companding function sampled over [0, 1], interpolated linearly in between
+    private static final int LAB_F_STEPS = 4096;
+    private static final float[] LAB_F = new float[LAB_F_STEPS + 2];
+    // the CIEDE2000 hue weighting T and rotation -sin(2 dTheta) sampled every half degree of
+    // mean hue, interpolated linearly in between
+    private static final int HUE_STEPS_PER_DEGREE = 2;
+    private static final float[] HUE_WEIGHT = new float[360 * HUE_STEPS_PER_DEGREE + 2];
+    private static final float[] HUE_ROTATION = new float[HUE_WEIGHT.length];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double c = i / 255.0;
+            SRGB_TO_LINEAR[i] = (float) (c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4));
+        }
+        for (int i = 0; i < LAB_F.length; i++) {
+            double t = (double) i / LAB_F_STEPS;
+            LAB_F[i] = (float) (t > EPSILON ? Math.cbrt(t) : (KAPPA * t + 16) / 116);
+        }
+        for (int i = 0; i < HUE_WEIGHT.length; i++) {
+            double hue = (double) i / HUE_STEPS_PER_DEGREE;
+            HUE_WEIGHT[i] = (float) (1 - 0.17 * Math.cos(Math.toRadians(hue - 30))
+                    + 0.24 * Math.cos(Math.toRadians(2 * hue))
+                    + 0.32 * Math.cos(Math.toRadians(3 * hue + 6))
+                    - 0.20 * Math.cos(Math.toRadians(4 * hue - 63)));
+            double dTheta = 30 * Math.exp(-((hue - 275) / 25) * ((hue - 275) / 25));
+            HUE_ROTATION[i] = (float) -Math.sin(Math.toRadians(2 * dTheta));
+        }
+    }
+
+    // 25^7
+    private static final double POW25_7 = 6103515625.0;
+
+    private PerceptualMath() {
+    }
+
+    /**
+     * @return the WCAG relative luminance of {@code color}, between 0 and 1
+     */
+    static float linearLuminance(int color) {
+        return 0.2126f * SRGB_TO_LINEAR[ColorMath.red(color)]
+                + 0.7152f * SRGB_TO_LINEAR[ColorMath.green(color)]
+                + 0.0722f * SRGB_TO_LINEAR[ColorMath.blue(color)];
+    }
+
+    /**
+     * @return whether the WCAG contrast ratio of two relative luminances is at least
+     * {@code minimumRatio}
+     */
+    static boolean hasContrastRatio(float luminanceA, float luminanceB, float minimumRatio) {
+        float high = Math.max(luminanceA, luminanceB);
+        float low = Math.min(luminanceA, luminanceB);
+        return high + 0.05f >= minimumRatio * (low + 0.05f);
+    }
+
+    /**
+     * Writes the CIELAB coordinates of {@code color} to {@code lab[offset]} to
+     * {@code lab[offset + 2]}, and their chroma to {@code lab[offset + 3]}, see
+     * {@link #LAB_SIZE}.
+     */
+    static void toLab(int color, float[] lab, int offset) {
+        double r = SRGB_TO_LINEAR[ColorMath.red(color)];
+        double g = SRGB_TO_LINEAR[ColorMath.green(color)];
+        double b = SRGB_TO_LINEAR[ColorMath.blue(color)];
+
+        double fx = labF((0.4124564 * r + 0.3575761 * g + 0.1804375 * b) / WHITE_X);
+        double fy = labF(0.2126729 * r + 0.7151522 * g + 0.0721750 * b);
+        double fz = labF((0.0193339 * r + 0.1191920 * g + 0.9503041 * b) / WHITE_Z);
+
+        double labA = 500 * (fx - fy);
+        double labB = 200 * (fy - fz);
+        lab[offset] = (float) (116 * fy - 16);
+        lab[offset + 1] = (float) labA;
+        lab[offset + 2] = (float) labB;
+        lab[offset + 3] = (float) Math.sqrt(labA * labA + labB * labB);
+    }
+
+    static float deltaE76(float[] lab, int offsetA, int offsetB) {
+        float dl = lab[offsetA] - lab[offsetB];
+        float da = lab[offsetA + 1] - lab[offsetB + 1];
+        float db = lab[offsetA + 2] - lab[offsetB + 2];
+        return (float) Math.sqrt(dl * dl + da * da + db * db);
+    }
+
+    /**
+     * The CIEDE2000 color difference, with the reference weights kL = kC = kH = 1, of two
+     * colors written by {@link #toLab}.
+     */
+    static float deltaE2000(float[] lab, int offsetA, int offsetB) {
+        double l1 = lab[offsetA];
+        double a1 = lab[offsetA + 1];
+        double b1 = lab[offsetA + 2];
+        double l2 = lab[offsetB];
+        double a2 = lab[offsetB + 1];
+        double b2 = lab[offsetB + 2];
+
+        double meanC = (lab[offsetA + 3] + lab[offsetB + 3]) / 2;
+        double meanC7 = pow7(meanC);
+        double g = 0.5 * (1 - Math.sqrt(meanC7 / (meanC7 + POW25_7)));
+        double a1p = (1 + g) * a1;
+        double a2p = (1 + g) * a2;
+        double c1p = Math.sqrt(a1p * a1p + b1 * b1);
+        double c2p = Math.sqrt(a2p * a2p + b2 * b2);
+
+        double dLp = l2 - l1;
+        double dCp = c2p - c1p;
+        double dHp = 0;
+        double meanHp;
+        if (c1p * c2p != 0) {
+            // 2 sqrt(C1' C2') sin(dh' / 2) without the angles: its square is
+            // 2 (C1' C2' - a1' a2' - b1 b2) and its sign the one of dh'
+            dHp = Math.sqrt(Math.max(0, 2 * (c1p * c2p - a1p * a2p - b1 * b2)));
+            if (a1p * b2 - b1 * a2p < 0) {
+                dHp = -dHp;
+            }
+            // the mean hue bisects the shorter arc between both hues
+            double x = a1p / c1p + a2p / c2p;
+            double y = b1 / c1p + b2 / c2p;
+            meanHp = x == 0 && y == 0
+                    ? (hueAngle(b1, a1p) + hueAngle(b2, a2p)) / 2
+                    : hueAngle(y, x);
+        } else {
+            // at most one of the hues is defined, the mean is that one
+            meanHp = hueAngle(b1, a1p) + hueAngle(b2, a2p);
+        }
+
+        double meanLp = (l1 + l2) / 2;
+        double meanCp = (c1p + c2p) / 2;
+
+        double position = meanHp * HUE_STEPS_PER_DEGREE;
+        int index = (int) position;
+        double fraction = position - index;
+        double t = HUE_WEIGHT[index] + (HUE_WEIGHT[index + 1] - HUE_WEIGHT[index]) * fraction;
+        double rotation = HUE_ROTATION[index] + (HUE_ROTATION[index + 1] - HUE_ROTATION[index]) * fraction;
+
+        double meanCp7 = pow7(meanCp);
+        double rc = 2 * Math.sqrt(meanCp7 / (meanCp7 + POW25_7));
+        double lOffset = (meanLp - 50) * (meanLp - 50);
+        double sl = 1 + 0.015 * lOffset / Math.sqrt(20 + lOffset);
+        double sc = 1 + 0.045 * meanCp;
+        double sh = 1 + 0.015 * meanCp * t;
+        double rt = rotation * rc;
+
+        double l = dLp / sl;
+        double c = dCp / sc;
+        double h = dHp / sh;
+        return (float) Math.sqrt(l * l + c * c + h * h + rt * c * h);
+    }
+
+    private static double pow7(double value) {
+        double square = value * value;
+        return square * square * square * value;
+    }
+
+    private static double hueAngle(double b, double a) {
+        if (a == 0 && b == 0) {
+            return 0;
+        }
+        double degrees = Math.toDegrees(Math.atan2(b, a));
+        return degrees < 0 ? degrees + 360 : degrees;
+    }
+
+    /**
+     * @param t a tristimulus value relative to the white point, between 0 and 1
+     */
+    private static double labF(double t) {
+        double position = Math.min(Math.max(t, 0), 1) * LAB_F_STEPS;
+        int index = (int) position;
+        double fraction = position - index;
+        return LAB_F[index] + (LAB_F[index + 1] - LAB_F[index]) * fraction;
+    }
+}
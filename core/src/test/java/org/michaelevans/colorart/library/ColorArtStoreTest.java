@@ -0,0 +1,279 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.michaelevans.colorart.library;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ColorArtStoreTest {
+    private static final int VERSION = 7;
+    // header and record sizes of format version 1
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 28;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void getsWhatWasPut() throws IOException {
+        ColorArtStore store = ColorArtStore.open(mFolder.newFile(), VERSION);
+        try {
+            store.put(1, result(1));
+            store.put(2, 10, 20, 30, 40);
+
+            assertEquals(2, store.size());
+            assertTrue(store.contains(1));
+            assertFalse(store.contains(3));
+            assertColors(result(1), store.get(1));
+            int[] colors = new int[4];
+            assertTrue(store.get(2, colors));
+            assertArrayEquals(new int[]{10, 20, 30, 40}, colors);
+            assertNull(store.get(3));
+            assertFalse(store.get(3, colors));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void overwritesAKeyInPlace() throws IOException {
+        File file = mFolder.newFile();
+        ColorArtStore store = ColorArtStore.open(file, VERSION);
+        try {
+            store.put(1, result(1));
+            store.put(1, result(2));
+
+            assertEquals(1, store.size());
+            assertColors(result(2), store.get(1));
+        } finally {
+            store.close();
+        }
+        assertEquals(1, recordCount(file));
+    }
+
+    @Test
+    public void keepsResultsAcrossReopening() throws IOException {
+        File file = mFolder.newFile();
+        ColorArtStore store = ColorArtStore.open(file, VERSION);
+        // enough to grow past the initial mapping
+        for (int key = 0; key < 1000; key++) {
+            store.put(key, result(key));
+        }
+        store.close();
+
+        store = ColorArtStore.open(file, VERSION);
+        try {
+            assertEquals(1000, store.size());
+            for (int key = 0; key < 1000; key++) {
+                assertColors(result(key), store.get(key));
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void ignoresRecordsOfAnotherVersion() throws IOException {
+        File file = mFolder.newFile();
+        ColorArtStore store = ColorArtStore.open(file, VERSION);
+        store.put(1, result(1));
+        store.close();
+
+        store = ColorArtStore.open(file, VERSION + 1);
+        try {
+            assertEquals(0, store.size());
+            assertNull(store.get(1));
+            store.put(1, result(2));
+            assertColors(result(2), store.get(1));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void compactDropsOtherVersionsAndShrinks() throws IOException {
+        File file = mFolder.newFile();
+        ColorArtStore store = ColorArtStore.open(file, VERSION);
+        for (int key = 0; key < 1000; key++) {
+            store.put(key, result(key));
+        }
+        store.close();
+        // mark the first 600 records as written by the next version, which opening it with
+        // so few stale records leaves alone
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        try {
+            for (int record = 0; record < 600; record++) {
+                raw.seek(HEADER_SIZE + (long) record * RECORD_SIZE + 24);
+                raw.writeInt(VERSION + 1);
+            }
+        } finally {
+            raw.close();
+        }
+
+        store = ColorArtStore.open(file, VERSION + 1);
+        try {
+            assertEquals(600, store.size());
+            assertEquals(1000, recordCount(file));
+
+            store.compact();
+            assertEquals(600, store.size());
+            assertEquals(600, recordCount(file));
+            assertEquals(HEADER_SIZE + 600L * RECORD_SIZE, file.length());
+            assertFalse(new File(file.getPath() + ".compact").exists());
+            assertColors(result(599), store.get(599));
+            assertNull(store.get(600));
+
+            store.put(5000, result(1));
+            assertColors(result(1), store.get(5000));
+        } finally {
+            store.close();
+        }
+
+        store = ColorArtStore.open(file, VERSION + 1);
+        try {
+            assertEquals(601, store.size());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void compactsMostlyStaleFilesWhenOpened() throws IOException {
+        File file = mFolder.newFile();
+        ColorArtStore store = ColorArtStore.open(file, VERSION);
+        for (int key = 0; key < 1000; key++) {
+            store.put(key, result(key));
+        }
+        store.close();
+
+        store = ColorArtStore.open(file, VERSION + 1);
+        try {
+            assertEquals(0, store.size());
+            assertEquals(0, recordCount(file));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void readsTheCompleteRecordsOfATruncatedFile() throws IOException {
+        File file = mFolder.newFile();
+        ColorArtStore store = ColorArtStore.open(file, VERSION);
+        for (int key = 0; key < 100; key++) {
+            store.put(key, result(key));
+        }
+        store.close();
+
+        // cut the last record in half, the header still counts it
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        try {
+            raw.setLength(HEADER_SIZE + 99L * RECORD_SIZE + RECORD_SIZE / 2);
+        } finally {
+            raw.close();
+        }
+
+        store = ColorArtStore.open(file, VERSION);
+        try {
+            assertEquals(99, store.size());
+            assertColors(result(98), store.get(98));
+            assertNull(store.get(99));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void startsOverOnAFileThatIsNotAStore() throws IOException {
+        File file = mFolder.newFile();
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        try {
+            raw.write(new byte[100]);
+        } finally {
+            raw.close();
+        }
+
+        ColorArtStore store = ColorArtStore.open(file, VERSION);
+        try {
+            assertEquals(0, store.size());
+            store.put(1, result(1));
+            assertColors(result(1), store.get(1));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void refusesToBeUsedOnceClosed() throws IOException {
+        ColorArtStore store = ColorArtStore.open(mFolder.newFile(), VERSION);
+        store.put(1, result(1));
+        store.close();
+
+        try {
+            store.get(1);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            store.get(1, new int[4]);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            store.flush();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            store.put(2, result(2));
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    private static ColorArtResult result(int seed) {
+        return new ColorArtResult(0xFF000000 | seed, 0xFF000000 | (seed * 3), 0xFF000000 | (seed * 5),
+                0xFF000000 | (seed * 7));
+    }
+
+    private static void assertColors(ColorArtResult expected, ColorArtResult actual) {
+        assertEquals(expected.getBackgroundColor(), actual.getBackgroundColor());
+        assertEquals(expected.getPrimaryColor(), actual.getPrimaryColor());
+        assertEquals(expected.getSecondaryColor(), actual.getSecondaryColor());
+        assertEquals(expected.getDetailColor(), actual.getDetailColor());
+    }
+
+    private static int recordCount(File file) throws IOException {
+        RandomAccessFile raw = new RandomAccessFile(file, "r");
+        try {
+            raw.seek(8);
+            return raw.readInt();
+        } finally {
+            raw.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.michaelevans.colorart.library;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ColorHeapTest {
+
+    @Test
+    public void handsOutColorsByCountThenInsertionOrder() {
+        ColorHeap heap = new ColorHeap();
+        Random random = new Random(2);
+        int size = 500;
+        for (int i = 0; i < size; i++) {
+            // plenty of ties
+            heap.add(i, random.nextInt(20), i * 7);
+        }
+
+        int previous = -1;
+        for (int taken = 0; taken < size; taken++) {
+            int next = heap.next();
+            assertTrue(next >= 0);
+            assertEquals(next, heap.colorAt(next));
+            assertEquals(next * 7, heap.luminanceAt(next));
+            if (previous >= 0) {
+                int previousCount = heap.countAt(previous);
+                int count = heap.countAt(next);
+                assertTrue(previousCount > count || (previousCount == count && previous < next));
+            }
+            previous = next;
+        }
+        assertEquals(-1, heap.next());
+    }
+
+    @Test
+    public void clearStartsOver() {
+        ColorHeap heap = new ColorHeap();
+        heap.add(1, 1);
+        heap.add(2, 5);
+        assertEquals(1, heap.next());
+
+        heap.clear();
+        assertEquals(0, heap.size());
+        assertEquals(-1, heap.next());
+
+        heap.clear();
+        heap.add(3, 1);
+        heap.add(4, 2);
+        assertEquals(2, heap.size());
+        assertEquals(4, heap.colorAt(heap.next()));
+        assertEquals(3, heap.colorAt(heap.next()));
+        assertEquals(-1, heap.next());
+    }
+}
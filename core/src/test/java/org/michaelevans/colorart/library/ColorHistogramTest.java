@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.michaelevans.colorart.library;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ColorHistogramTest {
+
+    @Test
+    public void countsColorsInInsertionOrder() {
+        ColorHistogram histogram = new ColorHistogram(4);
+        Map<Integer, Integer> expected = new LinkedHashMap<Integer, Integer>();
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            // few enough colors to repeat, enough to grow and rehash several times
+            int color = 0xFF000000 | random.nextInt(3000) * 0x010101;
+            histogram.add(color);
+            Integer count = expected.get(color);
+            expected.put(color, count == null ? 1 : count + 1);
+        }
+
+        assertEquals(expected.size(), histogram.size());
+        int index = 0;
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getKey(), histogram.colorAt(index));
+            assertEquals((int) entry.getValue(), histogram.countAt(index));
+            assertEquals(index, histogram.indexOf(entry.getKey()));
+            assertEquals((int) entry.getValue(), histogram.getCount(entry.getKey()));
+            index++;
+        }
+        assertEquals(-1, histogram.indexOf(0x12345678));
+        assertEquals(0, histogram.getCount(0x12345678));
+    }
+
+    @Test
+    public void removeEmptyKeepsTheOthersInOrder() {
+        ColorHistogram histogram = new ColorHistogram();
+        for (int color = 0; color < 100; color++) {
+            histogram.add(color, color + 1);
+        }
+        for (int color = 0; color < 100; color += 2) {
+            histogram.add(color, -(color + 1));
+        }
+        histogram.removeEmpty();
+
+        assertEquals(50, histogram.size());
+        for (int i = 0; i < 50; i++) {
+            int color = 2 * i + 1;
+            assertEquals(color, histogram.colorAt(i));
+            assertEquals(color + 1, histogram.countAt(i));
+            assertEquals(i, histogram.indexOf(color));
+        }
+        assertEquals(-1, histogram.indexOf(0));
+    }
+
+    @Test
+    public void addAllMergesCounts() {
+        ColorHistogram a = new ColorHistogram();
+        a.add(1, 2);
+        a.add(2, 3);
+        ColorHistogram b = new ColorHistogram();
+        b.add(3, 4);
+        b.add(1, 5);
+        a.addAll(b);
+
+        assertEquals(3, a.size());
+        assertEquals(7, a.getCount(1));
+        assertEquals(3, a.getCount(2));
+        assertEquals(4, a.getCount(3));
+        assertEquals(3, a.colorAt(2));
+    }
+
+    @Test
+    public void clearForgetsEveryColor() {
+        ColorHistogram histogram = new ColorHistogram();
+        for (int color = 0; color < 1000; color++) {
+            histogram.add(color);
+        }
+        histogram.clear();
+
+        assertEquals(0, histogram.size());
+        assertEquals(-1, histogram.indexOf(5));
+        histogram.add(5);
+        assertEquals(0, histogram.indexOf(5));
+        assertEquals(1, histogram.getCount(5));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.michaelevans.colorart.library;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the integer predicates against the double helpers ColorArt used before. Colors
+ * that land exactly on a luminance threshold are skipped: there the doubles only decide by
+ * how the weights happen to round.
+ */
+public class ColorMathTest {
+    private static final int SAMPLES = 200000;
+
+    @Test
+    public void isDarkMatchesTheDoubleThreshold() {
+        Random random = new Random(3);
+        for (int i = 0; i < SAMPLES; i++) {
+            int color = 0xFF000000 | random.nextInt(0x1000000);
+            if (2 * exactLuminance(color) == 255 * 10000) {
+                continue;
+            }
+            assertEquals(hex(color), luminance(color) < 0.5,
+                    ColorMath.isDark(ColorMath.luminance(color)));
+        }
+    }
+
+    @Test
+    public void isContrastingMatchesTheDoubleThreshold() {
+        Random random = new Random(4);
+        for (int i = 0; i < SAMPLES; i++) {
+            int a = 0xFF000000 | random.nextInt(0x1000000);
+            int b = 0xFF000000 | random.nextInt(0x1000000);
+            int exactHigh = Math.max(exactLuminance(a), exactLuminance(b));
+            int exactLow = Math.min(exactLuminance(a), exactLuminance(b));
+            if (100 * (5 * exactHigh - 8 * exactLow) == 15 * 255 * 10000) {
+                continue;
+            }
+            double high = Math.max(luminance(a), luminance(b));
+            double low = Math.min(luminance(a), luminance(b));
+            assertEquals(hex(a) + " " + hex(b), (high + 0.05) / (low + 0.05) > 1.6,
+                    ColorMath.isContrasting(ColorMath.luminance(a), ColorMath.luminance(b)));
+        }
+    }
+
+    @Test
+    public void isDistinctMatchesTheDoubleThresholds() {
+        // every channel difference around the thresholds, on grays and on colors
+        for (int base = 0; base < 256; base += 5) {
+            for (int other = 0; other < 256; other++) {
+                int[] colors = {
+                        gray(base), gray(other),
+                        0xFF000000 | (base << 16) | 0x8040, 0xFF000000 | (other << 16) | 0x8040,
+                        (base << 24) | 0x102030, (other << 24) | 0x102030
+                };
+                for (int i = 0; i < colors.length; i += 2) {
+                    assertEquals(hex(colors[i]) + " " + hex(colors[i + 1]),
+                            isDistinct(colors[i], colors[i + 1]),
+                            ColorMath.isDistinct(colors[i], colors[i + 1]));
+                }
+            }
+        }
+        Random random = new Random(5);
+        for (int i = 0; i < SAMPLES; i++) {
+            int a = random.nextInt();
+            int b = random.nextInt();
+            assertEquals(hex(a) + " " + hex(b), isDistinct(a, b), ColorMath.isDistinct(a, b));
+        }
+    }
+
+    @Test
+    public void isBlackOrWhiteMatchesTheDoubleThresholds() {
+        for (int value = 0; value < 256; value++) {
+            int[] colors = {gray(value), 0xFF000000 | (value << 16), 0xFF00FFFF | (value << 16)};
+            for (int color : colors) {
+                double r = ColorMath.red(color) / 255.0;
+                double g = ColorMath.green(color) / 255.0;
+                double b = ColorMath.blue(color) / 255.0;
+                boolean expected = (r > .91 && g > .91 && b > .91) || (r < .09 && g < .09 && b < .09);
+                assertEquals(hex(color), expected, ColorMath.isBlackOrWhite(color));
+            }
+        }
+    }
+
+    private static double luminance(int color) {
+        return 0.2126 * ColorMath.red(color) / 255 + 0.7152 * ColorMath.green(color) / 255
+                + 0.0722 * ColorMath.blue(color) / 255;
+    }
+
+    private static int exactLuminance(int color) {
+        return 2126 * ColorMath.red(color) + 7152 * ColorMath.green(color) + 722 * ColorMath.blue(color);
+    }
+
+    private static boolean isDistinct(int colorA, int colorB) {
+        double r = ColorMath.red(colorA) / 255.0;
+        double g = ColorMath.green(colorA) / 255.0;
+        double b = ColorMath.blue(colorA) / 255.0;
+        double a = ColorMath.alpha(colorA) / 255.0;
+        double r1 = ColorMath.red(colorB) / 255.0;
+        double g1 = ColorMath.green(colorB) / 255.0;
+        double b1 = ColorMath.blue(colorB) / 255.0;
+        double a1 = ColorMath.alpha(colorB) / 255.0;
+        double threshold = .25;
+        if (Math.abs(r - r1) > threshold || Math.abs(g - g1) > threshold
+                || Math.abs(b - b1) > threshold || Math.abs(a - a1) > threshold) {
+            return !(Math.abs(r - g) < .03 && Math.abs(r - b) < .03
+                    && Math.abs(r1 - g1) < .03 && Math.abs(r1 - b1) < .03);
+        }
+        return false;
+    }
+
+    private static int gray(int value) {
+        return 0xFF000000 | value * 0x010101;
+    }
+
+    private static String hex(int color) {
+        return String.format("#%08X", color);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.michaelevans.colorart.library;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ColorQuantizerTest {
+
+    @Test
+    public void keepsAtMostMaxColorsAndEveryPixel() {
+        Random random = new Random(6);
+        ColorHistogram colors = new ColorHistogram();
+        long pixels = 0;
+        for (int i = 0; i < 20000; i++) {
+            // translucent colors too, alpha must not split the bins
+            int count = 1 + random.nextInt(5);
+            colors.add((random.nextInt(256) << 24) | random.nextInt(0x1000000), count);
+            pixels += count;
+        }
+
+        ColorQuantizer quantizer = new ColorQuantizer();
+        ColorHistogram quantized = new ColorHistogram();
+        for (int maxColors = 1; maxColors <= 70; maxColors++) {
+            quantizer.quantize(colors, maxColors, quantized);
+            assertTrue(maxColors + " colors, got " + quantized.size(), quantized.size() <= maxColors);
+            assertEquals(pixels, total(quantized));
+        }
+    }
+
+    @Test
+    public void copiesColorsThatAlreadyFit() {
+        ColorHistogram colors = new ColorHistogram();
+        colors.add(0xFF102030, 3);
+        colors.add(0x80FFFFFF, 1);
+        ColorHistogram quantized = new ColorHistogram();
+        new ColorQuantizer().quantize(colors, 2, quantized);
+
+        assertEquals(2, quantized.size());
+        assertEquals(0xFF102030, quantized.colorAt(0));
+        assertEquals(3, quantized.countAt(0));
+        assertEquals(0x80FFFFFF, quantized.colorAt(1));
+    }
+
+    @Test
+    public void averagesEachBinWeightedByCount() {
+        ColorHistogram colors = new ColorHistogram();
+        // one 5-bit bin
+        colors.add(0xFF000000, 3);
+        colors.add(0x7F040404, 1);
+        // another
+        colors.add(0xFFF8F8F8, 2);
+        ColorHistogram quantized = new ColorHistogram();
+        new ColorQuantizer().quantize(colors, 2, quantized);
+
+        assertEquals(2, quantized.size());
+        assertEquals(0xDF010101, quantized.colorAt(0));
+        assertEquals(4, quantized.countAt(0));
+        assertEquals(0xFFF8F8F8, quantized.colorAt(1));
+        assertEquals(2, quantized.countAt(1));
+    }
+
+    private static long total(ColorHistogram histogram) {
+        long total = 0;
+        for (int i = 0; i < histogram.size(); i++) {
+            total += histogram.countAt(i);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.michaelevans.colorart.library;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelScanTest {
+    private static final int[] BAND_COUNTS = {2, 3, 4, 7};
+
+    @Test
+    public void matchesASinglePassOnTheCorpus() throws IOException {
+        File[] files = corpus().listFiles();
+        assertTrue("No corpus at " + corpus(), files != null && files.length > 0);
+        Arrays.sort(files);
+        int scanned = 0;
+        for (File file : files) {
+            BufferedImage image = ImageIO.read(file);
+            if (image == null) {
+                continue;
+            }
+            int width = image.getWidth();
+            int height = image.getHeight();
+            int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+            assertMatchesSinglePass(file.getName(), pixels, width, height);
+            scanned++;
+        }
+        assertTrue(scanned > 0);
+    }
+
+    @Test
+    public void matchesASinglePassWithMoreBandsThanRows() {
+        int[] pixels = {1, 2, 3, 2, 1, 4};
+        assertMatchesSinglePass("3 x 2", pixels, 3, 2);
+    }
+
+    @Test
+    public void rethrowsTheFailureOfABand() {
+        // one pixel short, so the last band runs off the end of the array
+        int[] pixels = new int[10 * 100 - 1];
+        for (int bandCount : BAND_COUNTS) {
+            try {
+                new ParallelScan(bandCount).scan(pixels, 10, 100, new ColorHistogram(), new ColorHistogram());
+                fail("Expected the band failure to be rethrown with " + bandCount + " bands");
+            } catch (ArrayIndexOutOfBoundsException expected) {
+            }
+        }
+    }
+
+    private static void assertMatchesSinglePass(String name, int[] pixels, int width, int height) {
+        ColorHistogram expectedColors = new ColorHistogram();
+        ColorHistogram expectedEdgeColors = new ColorHistogram();
+        for (int y = 0; y < height; y++) {
+            expectedEdgeColors.add(pixels[y * width]);
+            for (int x = 0; x < width; x++) {
+                expectedColors.add(pixels[y * width + x]);
+            }
+        }
+
+        ColorHistogram colors = new ColorHistogram();
+        ColorHistogram edgeColors = new ColorHistogram();
+        for (int bandCount : BAND_COUNTS) {
+            new ParallelScan(bandCount).scan(pixels, width, height, colors, edgeColors);
+            assertSameHistogram(name + ", " + bandCount + " bands", expectedColors, colors);
+            assertSameHistogram(name + " edge, " + bandCount + " bands", expectedEdgeColors, edgeColors);
+        }
+    }
+
+    private static void assertSameHistogram(String name, ColorHistogram expected, ColorHistogram actual) {
+        assertEquals(name, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(name + " color " + i, expected.colorAt(i), actual.colorAt(i));
+            assertEquals(name + " count " + i, expected.countAt(i), actual.countAt(i));
+        }
+    }
+
+    private static File corpus() {
+        return new File(System.getProperty("colorart.corpus", "../demo/src/main/res/drawable-xhdpi"));
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.michaelevans.colorart.library;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the table driven CIEDE2000 against the formula evaluated term by term, and both
+ * against published reference pairs (Sharma, Wu and Dalal, 2005).
+ */
+public class PerceptualMathTest {
+    private static final int SAMPLES = 200000;
+    // relative to the distance, the hue tables are what limits it
+    private static final double TOLERANCE = 5e-4;
+
+    @Test
+    public void deltaE2000MatchesTheReferencePairs() {
+        double[][] pairs = {
+                {50, 2.6772, -79.7751, 50, 0, -82.7485, 2.0425},
+                {50, 0, 0, 50, -1, 2, 2.3669},
+                {50, 2.5, 0, 73, 25, -18, 27.1492},
+                {50, 2.5, 0, 50, 3.1736, 0.5854, 1.0000},
+                {50, -0.001, 2.49, 50, 0.0009, -2.49, 4.8045},
+                {50, -0.001, 2.49, 50, 0.0011, -2.49, 4.7461},
+                {60.2574, -34.0099, 36.2677, 60.4626, -34.1751, 39.4387, 1.2644},
+        };
+        float[] lab = new float[2 * PerceptualMath.LAB_SIZE];
+        for (double[] pair : pairs) {
+            setLab(lab, 0, pair[0], pair[1], pair[2]);
+            setLab(lab, PerceptualMath.LAB_SIZE, pair[3], pair[4], pair[5]);
+            assertEquals(pair[6], deltaE2000(lab, 0, PerceptualMath.LAB_SIZE), 1e-4);
+            assertEquals(pair[6], PerceptualMath.deltaE2000(lab, 0, PerceptualMath.LAB_SIZE), 1e-4);
+        }
+    }
+
+    @Test
+    public void deltaE2000MatchesTheFormula() {
+        Random random = new Random(7);
+        float[] lab = new float[2 * PerceptualMath.LAB_SIZE];
+        for (int i = 0; i < SAMPLES; i++) {
+            int a = 0xFF000000 | random.nextInt(0x1000000);
+            int b = 0xFF000000 | random.nextInt(0x1000000);
+            PerceptualMath.toLab(a, lab, 0);
+            PerceptualMath.toLab(b, lab, PerceptualMath.LAB_SIZE);
+            double expected = deltaE2000(lab, 0, PerceptualMath.LAB_SIZE);
+            assertEquals(Integer.toHexString(a) + " " + Integer.toHexString(b), expected,
+                    PerceptualMath.deltaE2000(lab, 0, PerceptualMath.LAB_SIZE),
+                    TOLERANCE * Math.max(1, expected));
+        }
+    }
+
+    @Test
+    public void deltaE2000OfAColorWithItselfIsZero() {
+        Random random = new Random(8);
+        float[] lab = new float[PerceptualMath.LAB_SIZE];
+        for (int i = 0; i < 1000; i++) {
+            PerceptualMath.toLab(random.nextInt(), lab, 0);
+            assertEquals(0, PerceptualMath.deltaE2000(lab, 0, 0), 1e-5);
+        }
+    }
+
+    private static void setLab(float[] lab, int offset, double l, double a, double b) {
+        lab[offset] = (float) l;
+        lab[offset + 1] = (float) a;
+        lab[offset + 2] = (float) b;
+        lab[offset + 3] = (float) Math.sqrt(a * a + b * b);
+    }
+
+    /**
+     * CIEDE2000 as written in the paper, with every trigonometric term evaluated directly.
+     */
+    private static double deltaE2000(float[] lab, int offsetA, int offsetB) {
+        double l1 = lab[offsetA];
+        double a1 = lab[offsetA + 1];
+        double b1 = lab[offsetA + 2];
+        double l2 = lab[offsetB];
+        double a2 = lab[offsetB + 1];
+        double b2 = lab[offsetB + 2];
+
+        double meanC = (Math.sqrt(a1 * a1 + b1 * b1) + Math.sqrt(a2 * a2 + b2 * b2)) / 2;
+        double g = 0.5 * (1 - Math.sqrt(Math.pow(meanC, 7) / (Math.pow(meanC, 7) + Math.pow(25, 7))));
+        double a1p = (1 + g) * a1;
+        double a2p = (1 + g) * a2;
+        double c1p = Math.sqrt(a1p * a1p + b1 * b1);
+        double c2p = Math.sqrt(a2p * a2p + b2 * b2);
+        double h1p = hueAngle(b1, a1p);
+        double h2p = hueAngle(b2, a2p);
+
+        double dhp = 0;
+        if (c1p * c2p != 0) {
+            dhp = h2p - h1p;
+            if (dhp > 180) {
+                dhp -= 360;
+            } else if (dhp < -180) {
+                dhp += 360;
+            }
+        }
+        double dHp = 2 * Math.sqrt(c1p * c2p) * Math.sin(Math.toRadians(dhp / 2));
+
+        double meanLp = (l1 + l2) / 2;
+        double meanCp = (c1p + c2p) / 2;
+        double meanHp = h1p + h2p;
+        if (c1p * c2p != 0) {
+            if (Math.abs(h1p - h2p) <= 180) {
+                meanHp /= 2;
+            } else if (meanHp < 360) {
+                meanHp = (meanHp + 360) / 2;
+            } else {
+                meanHp = (meanHp - 360) / 2;
+            }
+        }
+
+        double t = 1 - 0.17 * Math.cos(Math.toRadians(meanHp - 30))
+                + 0.24 * Math.cos(Math.toRadians(2 * meanHp))
+                + 0.32 * Math.cos(Math.toRadians(3 * meanHp + 6))
+                - 0.20 * Math.cos(Math.toRadians(4 * meanHp - 63));
+        double dTheta = 30 * Math.exp(-((meanHp - 275) / 25) * ((meanHp - 275) / 25));
+        double rc = 2 * Math.sqrt(Math.pow(meanCp, 7) / (Math.pow(meanCp, 7) + Math.pow(25, 7)));
+        double lOffset = (meanLp - 50) * (meanLp - 50);
+        double sl = 1 + 0.015 * lOffset / Math.sqrt(20 + lOffset);
+        double sc = 1 + 0.045 * meanCp;
+        double sh = 1 + 0.015 * meanCp * t;
+        double rt = -Math.sin(Math.toRadians(2 * dTheta)) * rc;
+
+        double l = (l2 - l1) / sl;
+        double c = (c2p - c1p) / sc;
+        double h = dHp / sh;
+        return Math.sqrt(l * l + c * c + h * h + rt * c * h);
+    }
+
+    private static double hueAngle(double b, double a) {
+        if (a == 0 && b == 0) {
+            return 0;
+        }
+        double degrees = Math.toDegrees(Math.atan2(b, a));
+        return degrees < 0 ? degrees + 360 : degrees;
+    }
+}
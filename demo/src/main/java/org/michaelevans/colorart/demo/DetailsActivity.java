@@ -26,11 +26,14 @@ import android.view.View;
 import android.widget.TextView;
 
 import org.michaelevans.colorart.library.ColorArt;
+import org.michaelevans.colorart.library.ColorArtRequest;
+import org.michaelevans.colorart.library.ColorArtResult;
 import org.michaelevans.colorart.library.FadingImageView;
 
 public class DetailsActivity extends Activity {
 
     private FadingImageView mImageView;
+    private ColorArtRequest mColorArtRequest;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -43,21 +46,32 @@ public class DetailsActivity extends Activity {
             position = extras.getInt("position");
 
         Bitmap album = BitmapFactory.decodeResource(getResources(), SampleData.imageIds[position]);
-        ColorArt colorArt = new ColorArt(album);
 
         mImageView = (FadingImageView) findViewById(R.id.image);
         mImageView.setImageBitmap(album);
-        mImageView.setBackgroundColor(colorArt.getBackgroundColor(), FadingImageView.FadeSide.LEFT);
 
-        View container = findViewById(R.id.container);
-        container.setBackgroundColor(colorArt.getBackgroundColor());
+        mColorArtRequest = ColorArt.analyzeAsync(SampleData.imageIds[position], album, new ColorArt.Callback() {
+            @Override
+            public void onColorArtReady(ColorArtResult colorArt) {
+                mImageView.setBackgroundColor(colorArt.getBackgroundColor(), FadingImageView.FadeSide.LEFT);
 
-        TextView primary = (TextView) findViewById(R.id.primary);
-        primary.setTextColor(colorArt.getPrimaryColor());
-        TextView secondary = (TextView) findViewById(R.id.secondary);
-        secondary.setTextColor(colorArt.getSecondaryColor());
-        TextView detail = (TextView) findViewById(R.id.detail);
-        detail.setTextColor(colorArt.getDetailColor());
+                View container = findViewById(R.id.container);
+                container.setBackgroundColor(colorArt.getBackgroundColor());
+
+                TextView primary = (TextView) findViewById(R.id.primary);
+                primary.setTextColor(colorArt.getPrimaryColor());
+                TextView secondary = (TextView) findViewById(R.id.secondary);
+                secondary.setTextColor(colorArt.getSecondaryColor());
+                TextView detail = (TextView) findViewById(R.id.detail);
+                detail.setTextColor(colorArt.getDetailColor());
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mColorArtRequest.cancel();
     }
 
     @Override
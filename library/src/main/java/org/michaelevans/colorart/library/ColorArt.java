@@ -17,290 +17,765 @@
 package org.michaelevans.colorart.library;
 
 import android.graphics.Bitmap;
-import android.graphics.Color;
 import android.util.Log;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
 
 public class ColorArt {
-    private final double COLOR_THRESHOLD_MINIMUM_PERCENTAGE = 0.01;
-    private final double EDGE_COLOR_DISCARD_THRESHOLD = 0.3;
-    private final float MINIMUM_SATURATION_THRESHOLD = 0.15f;
     private static final String LOG_TAG = ColorArt.class.getSimpleName();
 
-    private final Bitmap mBitmap;
+    /**
+     * Identifies the analysis that produced a result. It changes whenever a threshold or
+     * the algorithm itself does, which invalidates results persisted by
+     * {@link ColorArtStore}. This is the version of the default options, see
+     * {@link Options#getAlgorithmVersion()} for others.
+     */
+    public static final int ALGORITHM_VERSION = AnalysisEngine.ALGORITHM_VERSION;
 
-    private HashBag<Integer> mImageColors;
-    private int mBackgroundColor;
-    private Integer mPrimaryColor = null;
-    private Integer mSecondaryColor = null;
-    private Integer mDetailColor = null;
+    private static volatile MetricsListener sMetricsListener;
 
+    private int mBackgroundColor;
+    private int mPrimaryColor;
+    private int mSecondaryColor;
+    private int mDetailColor;
+    // per side edge colors, only when more than the left edge was analyzed
+    private int[] mSideColors;
+    private ColorArtPalette mPalette;
+    private int mEdges;
+    // which colors are computed, lazy instances keep their source until all of them are.
+    // Written after the colors, so a getter that sees them set needs no lock
+    private volatile boolean mHasBackgroundColor;
+    private volatile boolean mHasTextColors;
+    private Bitmap mBitmap;
+    private int[] mArgb;
+    private int mWidth;
+    private int mHeight;
+    private Options mOptions;
 
     public ColorArt(Bitmap bitmap) {
-        mBitmap = Bitmap.createScaledBitmap(bitmap, 120, 120, false);
-        analyzeImage();
+        this(bitmap, Options.DEFAULT);
     }
 
-    private void analyzeImage() {
-        mBackgroundColor = findEdgeColor();
-        findTextColors(mImageColors);
-        boolean hasDarkBackground = isDarkColor(mBackgroundColor);
-
-        if (mPrimaryColor == null) {
-            Log.d(LOG_TAG, "Unable to detect primary color in image");
-            if (hasDarkBackground) {
-                mPrimaryColor = Color.WHITE;
-            } else {
-                mPrimaryColor = Color.BLACK;
-            }
+    /**
+     * Analyzes {@code bitmap}, sampling its pixels as configured by {@code options}.
+     */
+    public ColorArt(Bitmap bitmap, Options options) {
+        if (options.isLazy()) {
+            mBitmap = bitmap;
+            mOptions = options;
+        } else {
+            readResults(ColorArtAnalyzer.current().run(bitmap, options));
         }
+    }
 
-        if (mSecondaryColor == null) {
-            Log.d(LOG_TAG, "Unable to detect secondary in image");
-            if (hasDarkBackground) {
-                mSecondaryColor = Color.WHITE;
-            } else {
-                mSecondaryColor = Color.BLACK;
-            }
-        }
+    /**
+     * Analyzes raw pixel data, laid out row by row with no padding between rows.
+     *
+     * @param argb   the pixels as packed ARGB ints, {@code width * height} long
+     * @param width  the width of the image in pixels
+     * @param height the height of the image in pixels
+     */
+    public ColorArt(int[] argb, int width, int height) {
+        this(argb, width, height, Options.DEFAULT);
+    }
 
-        if (mDetailColor == null) {
-            Log.d(LOG_TAG, "Unable to detect detail color in image");
-            if (hasDarkBackground) {
-                mDetailColor = Color.WHITE;
-            } else {
-                mDetailColor = Color.BLACK;
-            }
+    /**
+     * Analyzes raw pixel data like {@link #ColorArt(int[], int, int)}. Sampling settings
+     * in {@code options} don't apply here, the pixels are used as given. A lazy instance
+     * keeps a reference to {@code argb}, don't modify it until all colors have been read.
+     */
+    public ColorArt(int[] argb, int width, int height, Options options) {
+        if (options.isLazy()) {
+            ColorArtAnalyzer.checkPixels(argb, width, height);
+            mArgb = argb;
+            mWidth = width;
+            mHeight = height;
+            mOptions = options;
+        } else {
+            readResults(ColorArtAnalyzer.current().run(argb, width, height, options));
         }
     }
 
-    private int findEdgeColor() {
-        int height = mBitmap.getHeight();
-        int width = mBitmap.getWidth();
-
-        mImageColors = new HashBag<Integer>();
-        HashBag<Integer> leftImageColors = new HashBag<Integer>();
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                if (x == 0) {
-                    leftImageColors.add(mBitmap.getPixel(x, y));
-                }
-                mImageColors.add(mBitmap.getPixel(x, y));
-            }
-        }
+    /**
+     * Decodes and analyzes an encoded image without ever holding it at full size. The image
+     * is decoded just large enough for the sample grid, in strips if it is still large, so
+     * memory use stays bounded even for huge photos.
+     * <p>
+     * The stream is read up to the end of the image but not closed. It is rewound once
+     * the bounds have been read, so images whose header takes more than 1 MB fail with an
+     * {@link IOException}, {@link #fromFile(File)} has no such limit.
+     *
+     * @throws IOException if the stream can't be read or doesn't hold a decodable image
+     */
+    public static ColorArt fromStream(InputStream in) throws IOException {
+        return fromStream(in, Options.DEFAULT);
+    }
 
-        ArrayList<CountedColor> sortedColors = new ArrayList<CountedColor>();
+    /**
+     * Like {@link #fromStream(InputStream)}, sampling the decoded image as configured by
+     * {@code options}.
+     */
+    public static ColorArt fromStream(InputStream in, Options options) throws IOException {
+        return new ColorArt(ColorArtAnalyzer.current().run(in, options));
+    }
 
-        int randomColorThreshold = (int) (height * COLOR_THRESHOLD_MINIMUM_PERCENTAGE);
-        Iterator<Integer> iterator = leftImageColors.iterator();
-        while (iterator.hasNext()) {
-            Integer color = iterator.next();
-            int colorCount = leftImageColors.getCount(color);
-            if (colorCount < randomColorThreshold) {
-                continue;
-            }
+    /**
+     * Decodes and analyzes the image in {@code file} like {@link #fromStream(InputStream)}.
+     */
+    public static ColorArt fromFile(File file) throws IOException {
+        return fromFile(file, Options.DEFAULT);
+    }
 
-            CountedColor container = new CountedColor(color, colorCount);
-            sortedColors.add(container);
-        }
+    /**
+     * Like {@link #fromFile(File)}, sampling the decoded image as configured by
+     * {@code options}.
+     */
+    public static ColorArt fromFile(File file, Options options) throws IOException {
+        return new ColorArt(ColorArtAnalyzer.current().run(file, options));
+    }
 
-        Collections.sort(sortedColors);
+    private ColorArt(AnalysisEngine engine) {
+        readResults(engine);
+    }
 
-        Iterator<CountedColor> sortedColorIterator = sortedColors.iterator();
-        if (!sortedColorIterator.hasNext()) {
-            return Color.BLACK;
+    private synchronized void findBackgroundColor() {
+        if (mHasBackgroundColor) {
+            // another thread got here first
+            return;
         }
-
-        CountedColor proposedEdgeColor = sortedColorIterator.next();
-        if (!proposedEdgeColor.isBlackOrWhite()) {
-            return proposedEdgeColor.getColor();
+        if (mOptions.isMasked()) {
+            // the edges are only known once the whole image has been scanned
+            findTextColors();
+            return;
+        }
+        ColorArtAnalyzer analyzer = ColorArtAnalyzer.current();
+        if (mBitmap != null) {
+            mBackgroundColor = analyzer.findBackgroundColor(mBitmap, mOptions);
+        } else {
+            mBackgroundColor = analyzer.findBackgroundColor(mArgb, mWidth, mHeight);
         }
+        mHasBackgroundColor = true;
+    }
 
-        while (sortedColorIterator.hasNext()) {
-            CountedColor nextProposedColor = sortedColorIterator.next();
-            double edgeColorRatio = (double) nextProposedColor.getCount() / proposedEdgeColor.getCount();
-            if (edgeColorRatio <= EDGE_COLOR_DISCARD_THRESHOLD) {
-                break;
+    private synchronized void findTextColors() {
+        if (mHasTextColors) {
+            return;
+        }
+        ColorArtAnalyzer analyzer = ColorArtAnalyzer.current();
+        if (mOptions.isMasked()) {
+            if (mBitmap != null) {
+                readResults(analyzer.run(mBitmap, mOptions));
+            } else {
+                readResults(analyzer.run(mArgb, mWidth, mHeight, mOptions));
             }
-
-            if (!nextProposedColor.isBlackOrWhite()) {
-                proposedEdgeColor = nextProposedColor;
-                break;
+        } else if (mHasBackgroundColor) {
+            if (mBitmap != null) {
+                readResults(analyzer.run(mBitmap, mOptions, mBackgroundColor));
+            } else {
+                readResults(analyzer.run(mArgb, mWidth, mHeight, mOptions, mBackgroundColor));
+            }
+        } else {
+            // the same background color findBackgroundColor() would find, in one analysis
+            if (mBitmap != null) {
+                readResults(analyzer.runFromLeftEdge(mBitmap, mOptions));
+            } else {
+                readResults(analyzer.runFromLeftEdge(mArgb, mWidth, mHeight, mOptions));
             }
         }
-
-        return proposedEdgeColor.getColor();
+        mBitmap = null;
+        mArgb = null;
+        mOptions = null;
     }
 
-    private void findTextColors(HashBag<Integer> colors) {
-        Iterator<Integer> iterator = colors.iterator();
-        int currentColor;
-        ArrayList<CountedColor> sortedColors = new ArrayList<CountedColor>();
-        boolean findDarkTextColor = !isDarkColor(mBackgroundColor);
-
-        while (iterator.hasNext()) {
-            currentColor = iterator.next();
-            currentColor = colorWithMinimumSaturation(currentColor, MINIMUM_SATURATION_THRESHOLD);
-            if (isDarkColor(currentColor) == findDarkTextColor) {
-                int colorCount = colors.getCount(currentColor);
-                CountedColor container = new CountedColor(currentColor, colorCount);
-                sortedColors.add(container);
+    private void readResults(AnalysisEngine engine) {
+        mBackgroundColor = engine.getBackgroundColor();
+        mPrimaryColor = engine.getPrimaryColor();
+        mSecondaryColor = engine.getSecondaryColor();
+        mDetailColor = engine.getDetailColor();
+        mEdges = engine.getEdges();
+        mPalette = engine.getPalette();
+        if (mEdges != 1 << AnalysisEngine.SIDE_LEFT) {
+            mSideColors = new int[AnalysisEngine.SIDE_COUNT];
+            for (int side = 0; side < AnalysisEngine.SIDE_COUNT; side++) {
+                mSideColors[side] = engine.getSideColor(side);
             }
         }
+        mHasBackgroundColor = true;
+        mHasTextColors = true;
 
-        Collections.sort(sortedColors);
-
-        for (CountedColor currentContainer : sortedColors) {
-            currentColor = currentContainer.getColor();
-            if (mPrimaryColor == null) {
-                if (isContrastingColor(currentColor, mBackgroundColor)) {
-                    mPrimaryColor = currentColor;
-                }
-            } else if (mSecondaryColor == null) {
-                if (!isDistinctColor(mPrimaryColor, currentColor) ||
-                        !isContrastingColor(currentColor, mBackgroundColor)) {
-                    continue;
-                }
-                mSecondaryColor = currentColor;
-            } else if (mDetailColor == null) {
-                if (!isDistinctColor(mSecondaryColor, currentColor) ||
-                        !isDistinctColor(mPrimaryColor, currentColor) ||
-                        !isContrastingColor(currentColor, mBackgroundColor)) {
-                    continue;
-                }
-                mDetailColor = currentColor;
-                break;
-            }
+        int fallbacks = engine.getFallbacks();
+        if ((fallbacks & AnalysisEngine.FALLBACK_PRIMARY) != 0) {
+            Log.d(LOG_TAG, "Unable to detect primary color in image");
+        }
+        if ((fallbacks & AnalysisEngine.FALLBACK_SECONDARY) != 0) {
+            Log.d(LOG_TAG, "Unable to detect secondary in image");
+        }
+        if ((fallbacks & AnalysisEngine.FALLBACK_DETAIL) != 0) {
+            Log.d(LOG_TAG, "Unable to detect detail color in image");
         }
     }
 
     public int getBackgroundColor() {
+        if (!mHasBackgroundColor) {
+            findBackgroundColor();
+        }
         return mBackgroundColor;
     }
 
+    /**
+     * Returns the background color along {@code side} of the image, to blend into from that
+     * side with {@link FadingImageView#setBackgroundColor(int, FadingImageView.FadeSide)}.
+     * {@link #getBackgroundColor()} is the color of the left side.
+     *
+     * @throws IllegalArgumentException if {@code side} wasn't requested with
+     *                                  {@link Options.Builder#edges}
+     */
+    public int getBackgroundColor(FadingImageView.FadeSide side) {
+        if (side == FadingImageView.FadeSide.LEFT) {
+            return getBackgroundColor();
+        }
+        if (!mHasTextColors) {
+            // only the left edge is read up front, the others come with the full analysis
+            findTextColors();
+        }
+        int engineSide = sideOf(side);
+        if ((mEdges & (1 << engineSide)) == 0) {
+            throw new IllegalArgumentException(side + " edge wasn't analyzed, request it with Options.Builder.edges()");
+        }
+        return mSideColors[engineSide];
+    }
+
+    /**
+     * @return the {@code AnalysisEngine.SIDE_*} constant for {@code side}
+     */
+    static int sideOf(FadingImageView.FadeSide side) {
+        switch (side) {
+            case LEFT:
+                return AnalysisEngine.SIDE_LEFT;
+            case RIGHT:
+                return AnalysisEngine.SIDE_RIGHT;
+            case TOP:
+                return AnalysisEngine.SIDE_TOP;
+            case BOTTOM:
+                return AnalysisEngine.SIDE_BOTTOM;
+            default:
+                throw new IllegalArgumentException("Unknown side " + side);
+        }
+    }
+
+    /**
+     * @return the dominant colors of the image along with the colors above
+     * @throws IllegalStateException if the palette wasn't requested with
+     *                               {@link Options.Builder#palette}
+     */
+    public ColorArtPalette getPalette() {
+        if (!mHasTextColors) {
+            findTextColors();
+        }
+        if (mPalette == null) {
+            throw new IllegalStateException("No palette, request it with Options.Builder.palette()");
+        }
+        return mPalette;
+    }
+
     public int getPrimaryColor() {
+        if (!mHasTextColors) {
+            findTextColors();
+        }
         return mPrimaryColor;
     }
 
     public int getSecondaryColor() {
+        if (!mHasTextColors) {
+            findTextColors();
+        }
         return mSecondaryColor;
     }
 
     public int getDetailColor() {
+        if (!mHasTextColors) {
+            findTextColors();
+        }
         return mDetailColor;
     }
 
-    //helpers
-    private int colorWithMinimumSaturation(int color, float minSaturation) {
-        float[] hsv = new float[3];
-        Color.colorToHSV(color, hsv);
-        if (hsv[1] < minSaturation) {
-            return Color.HSVToColor(new float[]{hsv[0], minSaturation, hsv[2]});
+    public ColorArtResult toResult() {
+        if (!mHasTextColors) {
+            findTextColors();
         }
+        return new ColorArtResult(mBackgroundColor, mPrimaryColor, mSecondaryColor, mDetailColor);
+    }
 
-        return color;
+    /**
+     * Returns the colors of {@code bitmap}, reusing the result cached for {@code key} in
+     * {@link ColorArtCache#getDefault()} when there is one.
+     *
+     * @param key identifies the image, for instance a resource id, a URL or a content hash
+     */
+    public static ColorArtResult analyze(Object key, Bitmap bitmap) {
+        ColorArtCache cache = ColorArtCache.getDefault();
+        ColorArtResult result = cache.get(key);
+        if (result == null) {
+            result = ColorArtAnalyzer.current().analyze(bitmap);
+            cache.put(key, result);
+        }
+        return result;
     }
 
-    private boolean isDarkColor(int color) {
-        double r = (double) Color.red(color) / 255;
-        double g = (double) Color.green(color) / 255;
-        double b = (double) Color.blue(color) / 255;
+    /**
+     * Receives the colors of an image analyzed with {@link #analyzeAsync}. Always called on
+     * the main thread.
+     * <p>
+     * If the analysis fails, for instance because the bitmap was recycled, a plain callback
+     * receives {@link ColorArtRequest#FAILED_RESULT}, white on black. Implement
+     * {@link FailureCallback} to tell failures apart.
+     */
+    public interface Callback {
+        void onColorArtReady(ColorArtResult result);
+    }
 
-        double lum = 0.2126 * r + 0.7152 * g + 0.0722 * b;
+    /**
+     * A {@link Callback} that is told when the analysis fails instead of receiving
+     * {@link ColorArtRequest#FAILED_RESULT}. Also called on the main thread.
+     */
+    public interface FailureCallback extends Callback {
+        void onColorArtFailed(RuntimeException error);
+    }
 
-        return lum < 0.5;
+    /**
+     * Analyzes {@code bitmap} on a background thread. Requests for the same bitmap that
+     * overlap share a single analysis.
+     */
+    public static ColorArtRequest analyzeAsync(Bitmap bitmap, Callback callback) {
+        if (bitmap == null || callback == null) {
+            throw new IllegalArgumentException("bitmap and callback must not be null");
+        }
+        // the bitmap is only a key for coalescing here, never cache it
+        return ColorArtDispatcher.get().enqueue(bitmap, bitmap, callback, null);
     }
 
-    private boolean isContrastingColor(int backgroundColor, int foregroundColor) {
-        double br = (double) Color.red(backgroundColor) / 255;
-        double bg = (double) Color.green(backgroundColor) / 255;
-        double bb = (double) Color.blue(backgroundColor) / 255;
+    /**
+     * Analyzes {@code bitmap} on a background thread. Requests with an equal {@code key}
+     * (a resource id or URL for instance) that overlap share a single analysis, and the
+     * result is kept in {@link ColorArtCache#getDefault()}.
+     */
+    public static ColorArtRequest analyzeAsync(Object key, Bitmap bitmap, Callback callback) {
+        if (key == null || bitmap == null || callback == null) {
+            throw new IllegalArgumentException("key, bitmap and callback must not be null");
+        }
+        return ColorArtDispatcher.get().enqueue(key, bitmap, callback, ColorArtCache.getDefault());
+    }
 
-        double fr = (double) Color.red(foregroundColor) / 255;
-        double fg = (double) Color.green(foregroundColor) / 255;
-        double fb = (double) Color.blue(foregroundColor) / 255;
+    /**
+     * Receives results of {@link #analyzeAll(List, Options, BatchCallback)} as they complete.
+     * Called on worker threads, possibly several at once.
+     */
+    public interface BatchCallback {
+        void onColorArtReady(int index, ColorArtResult result);
+    }
 
+    /**
+     * Analyzes all {@code bitmaps} in parallel on every core and blocks until done. Meant for
+     * prefetching, never call it on the main thread.
+     *
+     * @return the results, in the same order as {@code bitmaps}
+     */
+    public static List<ColorArtResult> analyzeAll(List<Bitmap> bitmaps, Options options) {
+        return analyzeAll(bitmaps, options, null);
+    }
 
-        double bLum = 0.2126 * br + 0.7152 * bg + 0.0722 * bb;
-        double fLum = 0.2126 * fr + 0.7152 * fg + 0.0722 * fb;
+    /**
+     * Like {@link #analyzeAll(List, Options)}, also handing each result to {@code callback}
+     * as soon as it is ready.
+     */
+    public static List<ColorArtResult> analyzeAll(List<Bitmap> bitmaps, Options options,
+                                                  BatchCallback callback) {
+        ColorArtResult[] results = new ColorArtResult[bitmaps.size()];
+        ColorArtBatch.analyze(bitmaps, options, results, callback);
+        return Arrays.asList(results);
+    }
 
-        double contrast;
+    /**
+     * Sets how many background threads {@link #analyzeAsync} may use. Defaults to one
+     * less than the number of cores, between 1 and 4.
+     */
+    public static void setAsyncThreadCount(int threadCount) {
+        ColorArtDispatcher.get().setThreadCount(threadCount);
+    }
 
-        if (bLum > fLum) {
-            contrast = (bLum + 0.05) / (fLum + 0.05);
-        } else {
-            contrast = (fLum + 0.05) / (bLum + 0.05);
-        }
+    /**
+     * Receives the timings and counts of every analysis, for instance to aggregate them into
+     * telemetry. Called on the thread that ran the analysis, right after it.
+     */
+    public interface MetricsListener {
+        /**
+         * @param metrics reused for the next analysis on this thread, read what you need
+         *                before returning
+         */
+        void onColorArtMetrics(ColorArtMetrics metrics);
+    }
+
+    /**
+     * Sets the listener that receives the metrics of every analysis, or null to stop
+     * measuring. Without a listener nothing is measured.
+     */
+    public static void setMetricsListener(MetricsListener listener) {
+        sMetricsListener = listener;
+    }
 
-        return contrast > 1.6;
+    static MetricsListener getMetricsListener() {
+        return sMetricsListener;
     }
 
-    private boolean isDistinctColor(int colorA, int colorB) {
-        double r = (double) Color.red(colorA) / 255;
-        double g = (double) Color.green(colorA) / 255;
-        double b = (double) Color.blue(colorA) / 255;
-        double a = (double) Color.alpha(colorA) / 255;
+    /**
+     * Controls how many pixels of a {@link Bitmap} are analyzed and how they are picked, to
+     * trade accuracy for speed. A grid thumbnail can get away with far fewer samples than a
+     * full screen detail page.
+     */
+    public static final class Options {
+        public enum Sampling {
+            /**
+             * Scales the bitmap down to {@code sampleSize x sampleSize} with
+             * {@link Bitmap#createScaledBitmap} and analyzes every pixel. This is the default.
+             */
+            SCALED,
+            /**
+             * Reads every n-th pixel of every n-th row straight from the bitmap, up to
+             * {@code sampleSize x sampleSize} pixels, without allocating a scaled copy.
+             */
+            STRIDE,
+            /**
+             * Reads about {@code pixelBudget} pixels, one at a random position in each cell
+             * of an evenly spaced grid. The cells of a grid row share one random source row,
+             * so each row is read from the bitmap in one call.
+             */
+            STRATIFIED
+        }
 
-        double r1 = (double) Color.red(colorB) / 255;
-        double g1 = (double) Color.green(colorB) / 255;
-        double b1 = (double) Color.blue(colorB) / 255;
-        double a1 = (double) Color.alpha(colorB) / 255;
+        public static final Options DEFAULT = new Builder().build();
+
+        private final int mSampleSize;
+        private final Sampling mSampling;
+        private final int mPixelBudget;
+        private final int mMaxTextCandidates;
+        private final int mParallelThreshold;
+        private final boolean mLazy;
+        private final int mEdges;
+        private final ColorDistance mDistance;
+        private final ColorContrast mContrast;
+        private final int mPaletteSize;
+        private final float mRegionLeft;
+        private final float mRegionTop;
+        private final float mRegionRight;
+        private final float mRegionBottom;
+        private final int mAlphaCutoff;
+        private final boolean mTrimBorders;
+
+        private Options(Builder builder) {
+            mSampleSize = builder.mSampleSize;
+            mSampling = builder.mSampling;
+            mPixelBudget = builder.mPixelBudget;
+            mMaxTextCandidates = builder.mMaxTextCandidates;
+            mParallelThreshold = builder.mParallelThreshold;
+            mLazy = builder.mLazy;
+            mEdges = builder.mEdges;
+            mDistance = builder.mDistance;
+            mContrast = builder.mContrast;
+            mPaletteSize = builder.mPaletteSize;
+            mRegionLeft = builder.mRegionLeft;
+            mRegionTop = builder.mRegionTop;
+            mRegionRight = builder.mRegionRight;
+            mRegionBottom = builder.mRegionBottom;
+            mAlphaCutoff = builder.mAlphaCutoff;
+            mTrimBorders = builder.mTrimBorders;
+        }
 
-        double threshold = .25; //.15
+        void applyTo(AnalysisEngine engine) {
+            engine.setEdges(mEdges);
+            engine.setDistance(mDistance);
+            engine.setContrast(mContrast);
+            engine.setPaletteSize(mPaletteSize);
+            engine.setMaxTextCandidates(mMaxTextCandidates);
+            engine.setParallelThreshold(mParallelThreshold);
+            engine.setRegion(mRegionLeft, mRegionTop, mRegionRight, mRegionBottom);
+            engine.setMinAlpha(mAlphaCutoff);
+            engine.setTrimBorders(mTrimBorders);
+        }
 
-        if (Math.abs(r - r1) > threshold ||
-                Math.abs(g - g1) > threshold ||
-                Math.abs(b - b1) > threshold ||
-                Math.abs(a - a1) > threshold) {
-            // check for grays, prevent multiple gray colors
+        /**
+         * Identifies the colors these options produce, for opening a {@link ColorArtStore}
+         * that holds their results. It is {@link ColorArt#ALGORITHM_VERSION} for the default
+         * options; the edges and the palette don't change the four colors and are left out.
+         */
+        public int getAlgorithmVersion() {
+            return AnalysisEngine.algorithmVersion(
+                    mSampleSize - AnalysisEngine.DEFAULT_SAMPLE_SIZE,
+                    mSampling.ordinal(),
+                    mSampling == Sampling.STRATIFIED ? mPixelBudget : 0,
+                    mMaxTextCandidates,
+                    mDistance.ordinal(),
+                    mContrast.ordinal(),
+                    Float.floatToIntBits(mRegionLeft),
+                    Float.floatToIntBits(mRegionTop),
+                    Float.floatToIntBits(1 - mRegionRight),
+                    Float.floatToIntBits(1 - mRegionBottom),
+                    mAlphaCutoff,
+                    mTrimBorders ? 1 : 0);
+        }
 
-            if (Math.abs(r - g) < .03 && Math.abs(r - b) < .03 &&
-                    (Math.abs(r1 - g1) < .03 && Math.abs(r1 - b1) < .03)) {
-                    return false;
-            }
+        /**
+         * @return whether some pixels may be left out, so the edges can't be read on their own
+         */
+        boolean isMasked() {
+            return mRegionLeft > 0 || mRegionTop > 0 || mRegionRight < 1 || mRegionBottom < 1
+                    || mAlphaCutoff > 0 || mTrimBorders;
+        }
 
-            return true;
+        public int getSampleSize() {
+            return mSampleSize;
         }
 
-        return false;
-    }
+        public Sampling getSampling() {
+            return mSampling;
+        }
 
-    private class CountedColor implements Comparable<CountedColor> {
+        public int getPixelBudget() {
+            return mPixelBudget;
+        }
 
-        private final int mColor;
-        private final int mCount;
+        public int getMaxTextCandidates() {
+            return mMaxTextCandidates;
+        }
 
-        public CountedColor(int color, int count) {
-            mColor = color;
-            mCount = count;
+        public int getParallelThreshold() {
+            return mParallelThreshold;
         }
 
-        @Override
-        public int compareTo(CountedColor another) {
-            return getCount() < another.getCount() ? -1 : (getCount() == another.getCount() ? 0 : 1);
+        public boolean isLazy() {
+            return mLazy;
         }
 
-        public boolean isBlackOrWhite() {
-            double r = (double) Color.red(mColor) / 255;
-            double g = (double) Color.green(mColor) / 255;
-            double b = (double) Color.blue(mColor) / 255;
+        public ColorDistance getDistance() {
+            return mDistance;
+        }
 
-            if ((r > .91 && g > .91 && b > .91) || (r < .09 && g < .09 && b < .09)) // color is white or black
-                return true;
+        public ColorContrast getContrast() {
+            return mContrast;
+        }
 
-            return false;
+        public int getPaletteSize() {
+            return mPaletteSize;
         }
 
-        public int getCount() {
-            return mCount;
+        public int getAlphaCutoff() {
+            return mAlphaCutoff;
         }
 
-        public int getColor() {
-            return mColor;
+        public boolean isTrimmingBorders() {
+            return mTrimBorders;
         }
 
+        public static final class Builder {
+            private int mSampleSize = AnalysisEngine.DEFAULT_SAMPLE_SIZE;
+            private Sampling mSampling = Sampling.SCALED;
+            private int mPixelBudget = 1024;
+            private int mMaxTextCandidates;
+            private int mParallelThreshold = AnalysisEngine.DEFAULT_PARALLEL_THRESHOLD;
+            private boolean mLazy;
+            private int mEdges = 1 << AnalysisEngine.SIDE_LEFT;
+            private ColorDistance mDistance = ColorDistance.RGB;
+            private ColorContrast mContrast = ColorContrast.LEGACY;
+            private int mPaletteSize;
+            private float mRegionLeft;
+            private float mRegionTop;
+            private float mRegionRight = 1;
+            private float mRegionBottom = 1;
+            private int mAlphaCutoff;
+            private boolean mTrimBorders;
+
+            /**
+             * Sets the width and height of the sample grid for {@link Sampling#SCALED} and
+             * {@link Sampling#STRIDE}. Defaults to 120.
+             */
+            public Builder sampleSize(int sampleSize) {
+                if (sampleSize <= 0) {
+                    throw new IllegalArgumentException("sampleSize must be > 0");
+                }
+                mSampleSize = sampleSize;
+                return this;
+            }
+
+            public Builder sampling(Sampling sampling) {
+                if (sampling == null) {
+                    throw new IllegalArgumentException("sampling must not be null");
+                }
+                mSampling = sampling;
+                return this;
+            }
+
+            /**
+             * Sets how many pixels {@link Sampling#STRATIFIED} reads. Defaults to 1024.
+             */
+            public Builder pixelBudget(int pixelBudget) {
+                if (pixelBudget <= 0) {
+                    throw new IllegalArgumentException("pixelBudget must be > 0");
+                }
+                mPixelBudget = pixelBudget;
+                return this;
+            }
+
+            /**
+             * Merges similar colors into at most {@code maxColors} representative colors
+             * before the primary, secondary and detail colors are picked from them. This
+             * makes the pick much cheaper on photographic images with thousands of nearly
+             * identical colors, and lets those colors add up their counts. Disabled (0) by
+             * default.
+             */
+            public Builder quantize(int maxColors) {
+                if (maxColors < 0) {
+                    throw new IllegalArgumentException("maxColors must be >= 0");
+                }
+                mMaxTextCandidates = maxColors;
+                return this;
+            }
+
+            /**
+             * Sets the number of analyzed pixels from which the color counting is split
+             * across all cores. Only large sample sizes reach the default of 512 x 512; the
+             * colors picked are the same either way.
+             */
+            public Builder parallelThreshold(int pixelCount) {
+                if (pixelCount <= 0) {
+                    throw new IllegalArgumentException("pixelCount must be > 0");
+                }
+                mParallelThreshold = pixelCount;
+                return this;
+            }
+
+            /**
+             * Defers the analysis until a color is first asked for. The background color
+             * alone only reads the left edge, about {@code sampleSize} pixels, the full image
+             * is only analyzed once a text color is asked for. Meant for views that just use
+             * the background color.
+             * <p>
+             * A lazy {@link ColorArt} keeps a reference to its bitmap or pixels until a text
+             * color, the palette, another edge or {@link ColorArt#toResult()} is requested, even when
+             * only the background color is ever read, so don't recycle the bitmap early. The
+             * analysis runs on the thread that first asks for a color, other threads asking
+             * at the same time wait for it. With
+             * {@link Sampling#SCALED} the left edge is read without scaling the bitmap and may
+             * differ slightly from the eager result. With a {@link #region}, an
+             * {@link #alphaCutoff} or {@link #trimBorders} the edges depend on the whole image,
+             * so it is all analyzed on the first access. Only applies to the {@link Bitmap}
+             * and {@code int[]} constructors.
+             */
+            public Builder lazy(boolean lazy) {
+                mLazy = lazy;
+                return this;
+            }
+
+            /**
+             * Finds a background color for each of {@code sides} as well, all in the same pass
+             * over the pixels, for {@link ColorArt#getBackgroundColor(FadingImageView.FadeSide)}.
+             * The left side is always analyzed.
+             */
+            public Builder edges(FadingImageView.FadeSide... sides) {
+                int edges = 1 << AnalysisEngine.SIDE_LEFT;
+                for (FadingImageView.FadeSide side : sides) {
+                    if (side == null) {
+                        throw new IllegalArgumentException("sides must not be null");
+                    }
+                    edges |= 1 << sideOf(side);
+                }
+                mEdges = edges;
+                return this;
+            }
+
+            /**
+             * Sets how different the primary, secondary and detail colors must be from each
+             * other. Defaults to {@link ColorDistance#RGB}.
+             */
+            public Builder distance(ColorDistance distance) {
+                if (distance == null) {
+                    throw new IllegalArgumentException("distance must not be null");
+                }
+                mDistance = distance;
+                return this;
+            }
+
+            /**
+             * Sets how much the primary, secondary and detail colors must contrast with the
+             * background. Defaults to {@link ColorContrast#LEGACY}; the WCAG levels leave
+             * fewer candidates, so more images fall back to black or white text.
+             */
+            public Builder contrast(ColorContrast contrast) {
+                if (contrast == null) {
+                    throw new IllegalArgumentException("contrast must not be null");
+                }
+                mContrast = contrast;
+                return this;
+            }
+
+            /**
+             * Also extracts a palette of up to {@code maxSwatches} dominant colors, see
+             * {@link ColorArt#getPalette()}. Disabled (0) by default.
+             */
+            public Builder palette(int maxSwatches) {
+                if (maxSwatches < 0) {
+                    throw new IllegalArgumentException("maxSwatches must be >= 0");
+                }
+                mPaletteSize = maxSwatches;
+                return this;
+            }
+
+            /**
+             * Analyzes only a part of the image, given in fractions of its width and height,
+             * for instance {@code region(0, 0, 0.5f, 1)} for its left half. The pixels outside
+             * are skipped while counting, and the edge colors are those of the region's sides.
+             * Defaults to the whole image.
+             */
+            public Builder region(float left, float top, float right, float bottom) {
+                if (!(left >= 0 && left < right && right <= 1 && top >= 0 && top < bottom && bottom <= 1)) {
+                    throw new IllegalArgumentException("region must satisfy 0 <= left < right <= 1 and 0 <= top < bottom <= 1");
+                }
+                mRegionLeft = left;
+                mRegionTop = top;
+                mRegionRight = right;
+                mRegionBottom = bottom;
+                return this;
+            }
+
+            /**
+             * Skips the pixels whose alpha is below {@code minAlpha}, such as the transparent
+             * surroundings of an icon. The edge colors are then those of the first and last
+             * opaque enough pixel of each row and column. Disabled (0) by default.
+             */
+            public Builder alphaCutoff(int minAlpha) {
+                if (minAlpha < 0 || minAlpha > 255) {
+                    throw new IllegalArgumentException("minAlpha must be between 0 and 255");
+                }
+                mAlphaCutoff = minAlpha;
+                return this;
+            }
+
+            /**
+             * Leaves uniform black or white bars along the sides of the image, such as
+             * letterboxing, out of the analysis. They are detected on the sample grid by
+             * scanning in from each side until a row or column has a different color in it,
+             * and at most a third of the image is trimmed from each side. Disabled by default.
+             */
+            public Builder trimBorders(boolean trimBorders) {
+                mTrimBorders = trimBorders;
+                return this;
+            }
+
+            public Options build() {
+                return new Options(this);
+            }
+        }
     }
 }
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import android.graphics.Bitmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Analyzes one image after another, reusing the same pixel buffer, histograms and candidate
+ * arrays every time. Once they have grown to fit the images at hand, an analysis allocates
+ * nothing but its {@link ColorArtResult}, which only holds the four colors.
+ * <p>
+ * An analyzer is not thread-safe. Keep one per thread, or take them from a pool:
+ * <pre>
+ * ColorArtAnalyzer analyzer = new ColorArtAnalyzer(options);
+ * for (Bitmap cover : covers) {
+ *     results.add(analyzer.analyze(cover));
+ * }
+ * </pre>
+ * {@link ColorArt} itself runs on a per-thread analyzer.
+ */
+public final class ColorArtAnalyzer {
+    private static final ThreadLocal<ColorArtAnalyzer> sCurrent = new ThreadLocal<ColorArtAnalyzer>() {
+        @Override
+        protected ColorArtAnalyzer initialValue() {
+            return new ColorArtAnalyzer();
+        }
+    };
+
+    private final PixelSampler mSampler = new PixelSampler();
+    private final AnalysisEngine mEngine = new AnalysisEngine();
+    private final ColorArtMetrics mMetrics = new ColorArtMetrics();
+    private final ColorArt.Options mOptions;
+
+    public ColorArtAnalyzer() {
+        this(ColorArt.Options.DEFAULT);
+    }
+
+    /**
+     * @param options how to analyze every image, {@link ColorArt.Options#isLazy()} doesn't
+     *                apply here
+     */
+    public ColorArtAnalyzer(ColorArt.Options options) {
+        if (options == null) {
+            throw new IllegalArgumentException("options must not be null");
+        }
+        mOptions = options;
+    }
+
+    /**
+     * @return the calling thread's analyzer, with the default options
+     */
+    static ColorArtAnalyzer current() {
+        return sCurrent.get();
+    }
+
+    public ColorArtResult analyze(Bitmap bitmap) {
+        return toResult(run(bitmap, mOptions));
+    }
+
+    /**
+     * Analyzes raw pixel data like {@link ColorArt#ColorArt(int[], int, int)}.
+     */
+    public ColorArtResult analyze(int[] argb, int width, int height) {
+        return toResult(run(argb, width, height, mOptions));
+    }
+
+    /**
+     * Decodes and analyzes an encoded image like {@link ColorArt#fromStream(InputStream)}.
+     */
+    public ColorArtResult analyze(InputStream in) throws IOException {
+        return toResult(run(in, mOptions));
+    }
+
+    /**
+     * Decodes and analyzes an encoded image like {@link ColorArt#fromFile(File)}.
+     */
+    public ColorArtResult analyze(File file) throws IOException {
+        return toResult(run(file, mOptions));
+    }
+
+    /**
+     * Analyzes {@code bitmap} like {@link #analyze(Bitmap)}, also extracting its palette.
+     *
+     * @throws IllegalStateException if the options don't request a palette
+     */
+    public ColorArtPalette analyzePalette(Bitmap bitmap) {
+        checkPalette();
+        return run(bitmap, mOptions).getPalette();
+    }
+
+    /**
+     * Analyzes raw pixel data like {@link #analyze(int[], int, int)}, also extracting its
+     * palette.
+     *
+     * @throws IllegalStateException if the options don't request a palette
+     */
+    public ColorArtPalette analyzePalette(int[] argb, int width, int height) {
+        checkPalette();
+        return run(argb, width, height, mOptions).getPalette();
+    }
+
+    private void checkPalette() {
+        if (mOptions.getPaletteSize() == 0) {
+            throw new IllegalStateException("No palette, request it with Options.Builder.palette()");
+        }
+    }
+
+    static ColorArtResult toResult(AnalysisEngine engine) {
+        return new ColorArtResult(engine.getBackgroundColor(), engine.getPrimaryColor(),
+                engine.getSecondaryColor(), engine.getDetailColor());
+    }
+
+    static void checkPixels(int[] argb, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("width and height must be > 0");
+        }
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("argb must hold at least width * height pixels");
+        }
+    }
+
+    /**
+     * The {@code run} methods analyze an image and return the engine holding the results
+     * until the next analysis.
+     */
+    AnalysisEngine run(Bitmap bitmap, ColorArt.Options options) {
+        ColorArt.MetricsListener listener = beginMetrics(mSampler, mEngine, mMetrics);
+        try {
+            mSampler.sample(bitmap, options);
+            analyzeSample(options);
+        } finally {
+            endMetrics(listener, mMetrics);
+        }
+        return mEngine;
+    }
+
+    AnalysisEngine run(int[] argb, int width, int height, ColorArt.Options options) {
+        checkPixels(argb, width, height);
+        ColorArt.MetricsListener listener = beginMetrics(mSampler, mEngine, mMetrics);
+        try {
+            options.applyTo(mEngine);
+            mEngine.analyze(argb, width, height);
+        } finally {
+            endMetrics(listener, mMetrics);
+        }
+        return mEngine;
+    }
+
+    AnalysisEngine run(InputStream in, ColorArt.Options options) throws IOException {
+        ColorArt.MetricsListener listener = beginMetrics(mSampler, mEngine, mMetrics);
+        try {
+            SubsampledDecoder.sample(in, options, mSampler);
+            analyzeSample(options);
+        } finally {
+            endMetrics(listener, mMetrics);
+        }
+        return mEngine;
+    }
+
+    AnalysisEngine run(File file, ColorArt.Options options) throws IOException {
+        ColorArt.MetricsListener listener = beginMetrics(mSampler, mEngine, mMetrics);
+        try {
+            SubsampledDecoder.sample(file, options, mSampler);
+            analyzeSample(options);
+        } finally {
+            endMetrics(listener, mMetrics);
+        }
+        return mEngine;
+    }
+
+    /**
+     * Analyzes {@code bitmap} against a background color found earlier with
+     * {@link #findBackgroundColor(Bitmap, ColorArt.Options)}.
+     */
+    AnalysisEngine run(Bitmap bitmap, ColorArt.Options options, int backgroundColor) {
+        ColorArt.MetricsListener listener = beginMetrics(mSampler, mEngine, mMetrics);
+        try {
+            analyzeAgainst(bitmap, options, backgroundColor);
+        } finally {
+            endMetrics(listener, mMetrics);
+        }
+        return mEngine;
+    }
+
+    AnalysisEngine run(int[] argb, int width, int height, ColorArt.Options options, int backgroundColor) {
+        ColorArt.MetricsListener listener = beginMetrics(mSampler, mEngine, mMetrics);
+        try {
+            analyzeAgainst(argb, width, height, options, backgroundColor);
+        } finally {
+            endMetrics(listener, mMetrics);
+        }
+        return mEngine;
+    }
+
+    /**
+     * Finds the background color like {@link #findBackgroundColor(Bitmap, ColorArt.Options)}
+     * and then analyzes {@code bitmap} against it, reported as a single analysis.
+     */
+    AnalysisEngine runFromLeftEdge(Bitmap bitmap, ColorArt.Options options) {
+        ColorArt.MetricsListener listener = beginMetrics(mSampler, mEngine, mMetrics);
+        try {
+            analyzeAgainst(bitmap, options, leftEdgeColor(bitmap, options));
+        } finally {
+            endMetrics(listener, mMetrics);
+        }
+        return mEngine;
+    }
+
+    AnalysisEngine runFromLeftEdge(int[] argb, int width, int height, ColorArt.Options options) {
+        ColorArt.MetricsListener listener = beginMetrics(mSampler, mEngine, mMetrics);
+        try {
+            int backgroundColor = mEngine.findLeftEdgeColor(argb, width, height);
+            analyzeAgainst(argb, width, height, options, backgroundColor);
+        } finally {
+            endMetrics(listener, mMetrics);
+        }
+        return mEngine;
+    }
+
+    /**
+     * Finds the background color alone, reading only the left edge of {@code bitmap}.
+     */
+    int findBackgroundColor(Bitmap bitmap, ColorArt.Options options) {
+        ColorArt.MetricsListener listener = beginMetrics(mSampler, mEngine, mMetrics);
+        try {
+            return leftEdgeColor(bitmap, options);
+        } finally {
+            endMetrics(listener, mMetrics);
+        }
+    }
+
+    int findBackgroundColor(int[] argb, int width, int height) {
+        ColorArt.MetricsListener listener = beginMetrics(mSampler, mEngine, mMetrics);
+        try {
+            return mEngine.findLeftEdgeColor(argb, width, height);
+        } finally {
+            endMetrics(listener, mMetrics);
+        }
+    }
+
+    private int leftEdgeColor(Bitmap bitmap, ColorArt.Options options) {
+        mSampler.sampleLeftEdge(bitmap, options);
+        return mEngine.findLeftEdgeColor(mSampler.getPixels(), 1, mSampler.getHeight());
+    }
+
+    private void analyzeAgainst(Bitmap bitmap, ColorArt.Options options, int backgroundColor) {
+        mSampler.sample(bitmap, options);
+        options.applyTo(mEngine);
+        mEngine.analyze(mSampler.getPixels(), mSampler.getWidth(), mSampler.getHeight(), backgroundColor);
+    }
+
+    private void analyzeAgainst(int[] argb, int width, int height, ColorArt.Options options,
+                                int backgroundColor) {
+        options.applyTo(mEngine);
+        mEngine.analyze(argb, width, height, backgroundColor);
+    }
+
+    private void analyzeSample(ColorArt.Options options) {
+        options.applyTo(mEngine);
+        mEngine.analyze(mSampler.getPixels(), mSampler.getWidth(), mSampler.getHeight());
+    }
+
+    /**
+     * Starts recording into this analyzer's metrics if there is a listener.
+     *
+     * @return the listener to report to at the end, or null
+     */
+    /**
+     * Points {@code sampler} and {@code engine} at {@code metrics}, reset, when a
+     * {@link ColorArt.MetricsListener} is set and at nothing otherwise. Shared with
+     * {@link ColorArtFrameTracker}.
+     *
+     * @return the listener to pass to {@link #endMetrics} once the analysis is done
+     */
+    static ColorArt.MetricsListener beginMetrics(PixelSampler sampler, AnalysisEngine engine,
+                                                 ColorArtMetrics metrics) {
+        ColorArt.MetricsListener listener = ColorArt.getMetricsListener();
+        ColorArtMetrics collected = null;
+        if (listener != null) {
+            collected = metrics;
+            collected.reset();
+        }
+        sampler.setMetrics(collected);
+        engine.setMetrics(collected);
+        return listener;
+    }
+
+    static void endMetrics(ColorArt.MetricsListener listener, ColorArtMetrics metrics) {
+        if (listener != null) {
+            listener.onColorArtMetrics(metrics);
+        }
+    }
+}
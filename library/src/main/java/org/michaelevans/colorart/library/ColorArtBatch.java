@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import android.graphics.Bitmap;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Analyzes many bitmaps at once on every core.
+ * <p>
+ * The calling thread and one pool thread per remaining core each pull the next image off a
+ * shared counter until none are left, so uneven images balance out without a task per
+ * image. Every worker analyzes with its own per-thread scratch state, so the only
+ * allocation per image is its result.
+ */
+final class ColorArtBatch {
+    private static final int WORKER_COUNT = Runtime.getRuntime().availableProcessors();
+
+    private static ExecutorService sExecutor;
+
+    private ColorArtBatch() {
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(Math.max(1, WORKER_COUNT - 1), new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ColorArt-batch-" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Blocks until every bitmap has been analyzed. {@code results} is filled in order and
+     * {@code callback}, if any, is invoked on a worker thread as each result completes.
+     */
+    static void analyze(final List<Bitmap> bitmaps, final ColorArt.Options options,
+                        final ColorArtResult[] results, final ColorArt.BatchCallback callback) {
+        final int count = bitmaps.size();
+        if (count == 0) {
+            return;
+        }
+
+        final AtomicInteger nextIndex = new AtomicInteger();
+        final CountDownLatch remaining = new CountDownLatch(count);
+        final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int index;
+                while ((index = nextIndex.getAndIncrement()) < count) {
+                    try {
+                        if (failure.get() == null) {
+                            ColorArtResult result = ColorArtAnalyzer.toResult(
+                                    ColorArtAnalyzer.current().run(bitmaps.get(index), options));
+                            results[index] = result;
+                            if (callback != null) {
+                                callback.onColorArtReady(index, result);
+                            }
+                        }
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        remaining.countDown();
+                    }
+                }
+            }
+        };
+
+        // helpers that start after the caller ran out of work simply find nothing left to do
+        int helpers = Math.min(WORKER_COUNT, count) - 1;
+        ExecutorService executor = helpers > 0 ? executor() : null;
+        for (int i = 0; i < helpers; i++) {
+            executor.execute(worker);
+        }
+        worker.run();
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                remaining.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link ColorArt} analyses on a small pool of background threads and hands the
+ * results back on the main thread. Requests for a key that is already being analyzed
+ * share the running job instead of starting a new one, and keyed results already in a
+ * {@link ColorArtCache} are handed back without being analyzed again.
+ */
+final class ColorArtDispatcher {
+    private static final String LOG_TAG = ColorArtDispatcher.class.getSimpleName();
+    private static final int DEFAULT_THREAD_COUNT =
+            Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+
+    private static ColorArtDispatcher sInstance;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Map<Object, Job> mInFlight = new HashMap<Object, Job>();
+    private final ThreadPoolExecutor mExecutor;
+
+    static synchronized ColorArtDispatcher get() {
+        if (sInstance == null) {
+            sInstance = new ColorArtDispatcher(DEFAULT_THREAD_COUNT);
+        }
+        return sInstance;
+    }
+
+    private ColorArtDispatcher(int threadCount) {
+        mExecutor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+    }
+
+    synchronized void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be >= 1");
+        }
+        // grow the maximum first so the core size never exceeds it
+        if (threadCount > mExecutor.getMaximumPoolSize()) {
+            mExecutor.setMaximumPoolSize(threadCount);
+            mExecutor.setCorePoolSize(threadCount);
+        } else {
+            mExecutor.setCorePoolSize(threadCount);
+            mExecutor.setMaximumPoolSize(threadCount);
+        }
+    }
+
+    synchronized ColorArtRequest enqueue(Object key, Bitmap bitmap, ColorArt.Callback callback,
+                                         ColorArtCache cache) {
+        final ColorArtRequest request = new ColorArtRequest(this, callback);
+        if (cache != null) {
+            final ColorArtResult cached = cache.get(key);
+            if (cached != null) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        request.deliver(cached);
+                    }
+                });
+                return request;
+            }
+        }
+
+        Job job = mInFlight.get(key);
+        if (job == null) {
+            job = new Job(key, bitmap, cache);
+            mInFlight.put(key, job);
+            job.mFuture = new FutureTask<Void>(job, null);
+            mExecutor.execute(job.mFuture);
+        }
+        job.mRequests.add(request);
+        request.mJob = job;
+        return request;
+    }
+
+    synchronized void cancel(ColorArtRequest request) {
+        Job job = request.mJob;
+        if (job == null || !job.mRequests.remove(request)) {
+            return;
+        }
+        if (job.mRequests.isEmpty() && mInFlight.get(job.mKey) == job) {
+            mInFlight.remove(job.mKey);
+            job.mFuture.cancel(false);
+            // a cancelled task stays queued, and keeps its bitmap, until a worker reaches it
+            mExecutor.remove(job.mFuture);
+        }
+    }
+
+    private synchronized List<ColorArtRequest> finish(Job job) {
+        if (mInFlight.get(job.mKey) == job) {
+            mInFlight.remove(job.mKey);
+        }
+        List<ColorArtRequest> requests = new ArrayList<ColorArtRequest>(job.mRequests);
+        job.mRequests.clear();
+        return requests;
+    }
+
+    final class Job implements Runnable {
+        final Object mKey;
+        final Bitmap mBitmap;
+        final ColorArtCache mCache;
+        final List<ColorArtRequest> mRequests = new ArrayList<ColorArtRequest>(1);
+        FutureTask<Void> mFuture;
+
+        Job(Object key, Bitmap bitmap, ColorArtCache cache) {
+            mKey = key;
+            mBitmap = bitmap;
+            mCache = cache;
+        }
+
+        @Override
+        public void run() {
+            final ColorArtResult result;
+            try {
+                result = ColorArtAnalyzer.current().analyze(mBitmap);
+            } catch (final RuntimeException e) {
+                Log.w(LOG_TAG, "Unable to analyze image for key " + mKey, e);
+                final List<ColorArtRequest> requests = finish(this);
+                if (!requests.isEmpty()) {
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (ColorArtRequest request : requests) {
+                                request.fail(e);
+                            }
+                        }
+                    });
+                }
+                return;
+            }
+            if (mCache != null) {
+                mCache.put(mKey, result);
+            }
+
+            final List<ColorArtRequest> requests = finish(this);
+            if (requests.isEmpty()) {
+                return;
+            }
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (ColorArtRequest request : requests) {
+                        request.deliver(result);
+                    }
+                }
+            });
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "ColorArt-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import android.graphics.Bitmap;
+
+/**
+ * Follows the colors of a sequence of frames, such as a video or an animated cover.
+ * <p>
+ * Instead of analyzing every frame from scratch, the tracker keeps the sampled pixels and
+ * histograms of the previous frame and only recounts the pixels that changed. Its memory
+ * stays the same from frame to frame once the first one has been analyzed. Sample with
+ * {@link ColorArt.Options.Sampling#STRIDE} to avoid allocating a scaled copy of every frame.
+ * <p>
+ * To keep the colors from flickering, a role only switches to a color that differs from the
+ * current one once that color has been picked for {@code switchFrames} frames in a row.
+ * Small drifts don't switch it at all.
+ * <pre>
+ * ColorArtFrameTracker tracker = new ColorArtFrameTracker(options, 4);
+ * // for every frame
+ * ColorArtResult colors = tracker.update(frame);
+ * </pre>
+ * A tracker is not thread-safe.
+ */
+public final class ColorArtFrameTracker {
+    private static final int BACKGROUND = 0;
+    private static final int PRIMARY = 1;
+    private static final int SECONDARY = 2;
+    private static final int DETAIL = 3;
+    private static final int ROLE_COUNT = 4;
+
+    private final PixelSampler mSampler = new PixelSampler();
+    private final AnalysisEngine mEngine = new AnalysisEngine();
+    private final ColorArtMetrics mMetrics = new ColorArtMetrics();
+    private final ColorArt.Options mOptions;
+    private final int mSwitchFrames;
+
+    // indexed by role, the colors reported for the last frame
+    private final int[] mColors = new int[ROLE_COUNT];
+    // the color each role is about to switch to, and for how many frames it has been picked
+    private final int[] mPendingColors = new int[ROLE_COUNT];
+    private final int[] mPendingFrames = new int[ROLE_COUNT];
+    private boolean mStarted;
+
+    public ColorArtFrameTracker() {
+        this(ColorArt.Options.DEFAULT, 3);
+    }
+
+    /**
+     * @param options how to sample and analyze every frame, {@link ColorArt.Options#isLazy()}
+     *                doesn't apply here
+     * @param switchFrames for how many frames in a row a new color has to be picked before a
+     *                     role switches to it, 1 to switch right away
+     */
+    public ColorArtFrameTracker(ColorArt.Options options, int switchFrames) {
+        if (options == null) {
+            throw new IllegalArgumentException("options must not be null");
+        }
+        if (switchFrames <= 0) {
+            throw new IllegalArgumentException("switchFrames must be > 0");
+        }
+        mOptions = options;
+        mSwitchFrames = switchFrames;
+        options.applyTo(mEngine);
+    }
+
+    /**
+     * Analyzes the next frame.
+     *
+     * @return the smoothed colors of the sequence so far
+     */
+    public ColorArtResult update(Bitmap frame) {
+        ColorArt.MetricsListener listener = ColorArtAnalyzer.beginMetrics(mSampler, mEngine, mMetrics);
+        try {
+            mSampler.sample(frame, mOptions);
+            mEngine.analyzeFrame(mSampler.getPixels(), mSampler.getWidth(), mSampler.getHeight());
+        } finally {
+            ColorArtAnalyzer.endMetrics(listener, mMetrics);
+        }
+        return smooth();
+    }
+
+    /**
+     * Analyzes the next frame from raw pixel data, which is used as it is rather than
+     * sampled. Frames of the same size are updated incrementally.
+     *
+     * @return the smoothed colors of the sequence so far
+     */
+    public ColorArtResult update(int[] argb, int width, int height) {
+        ColorArtAnalyzer.checkPixels(argb, width, height);
+        ColorArt.MetricsListener listener = ColorArtAnalyzer.beginMetrics(mSampler, mEngine, mMetrics);
+        try {
+            mEngine.analyzeFrame(argb, width, height);
+        } finally {
+            ColorArtAnalyzer.endMetrics(listener, mMetrics);
+        }
+        return smooth();
+    }
+
+    /**
+     * Forgets the frames so far, the next one starts a new sequence.
+     */
+    public void reset() {
+        mEngine.resetFrames();
+        mStarted = false;
+    }
+
+    private ColorArtResult smooth() {
+        AnalysisEngine engine = mEngine;
+        if (!mStarted) {
+            mColors[BACKGROUND] = engine.getBackgroundColor();
+            mColors[PRIMARY] = engine.getPrimaryColor();
+            mColors[SECONDARY] = engine.getSecondaryColor();
+            mColors[DETAIL] = engine.getDetailColor();
+            for (int role = 0; role < ROLE_COUNT; role++) {
+                mPendingFrames[role] = 0;
+            }
+            mStarted = true;
+        } else {
+            smooth(BACKGROUND, engine.getBackgroundColor());
+            smooth(PRIMARY, engine.getPrimaryColor());
+            smooth(SECONDARY, engine.getSecondaryColor());
+            smooth(DETAIL, engine.getDetailColor());
+        }
+        return new ColorArtResult(mColors[BACKGROUND], mColors[PRIMARY], mColors[SECONDARY], mColors[DETAIL]);
+    }
+
+    private void smooth(int role, int color) {
+        if (ColorMath.isSimilar(color, mColors[role])) {
+            mPendingFrames[role] = 0;
+            return;
+        }
+        if (mPendingFrames[role] > 0 && ColorMath.isSimilar(color, mPendingColors[role])) {
+            mPendingFrames[role]++;
+        } else {
+            mPendingFrames[role] = 1;
+        }
+        // the latest pick, so a slowly drifting color is followed closely
+        mPendingColors[role] = color;
+        if (mPendingFrames[role] >= mSwitchFrames) {
+            mColors[role] = color;
+            mPendingFrames[role] = 0;
+        }
+    }
+}
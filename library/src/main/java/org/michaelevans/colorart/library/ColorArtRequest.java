@@ -0,0 +1,75 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+/**
+ * A pending call to {@link ColorArt#analyzeAsync(Object, android.graphics.Bitmap, ColorArt.Callback)}.
+ * Cancel it when the view waiting for the colors is recycled or destroyed.
+ */
+public final class ColorArtRequest {
+    /**
+     * What a plain {@link ColorArt.Callback} receives when the analysis fails: white text on
+     * a black background, the colors ColorArt falls back to.
+     */
+    public static final ColorArtResult FAILED_RESULT =
+            new ColorArtResult(0xFF000000, 0xFFFFFFFF, 0xFFFFFFFF, 0xFFFFFFFF);
+
+    private final ColorArtDispatcher mDispatcher;
+    private final ColorArt.Callback mCallback;
+    private volatile boolean mCancelled;
+
+    ColorArtDispatcher.Job mJob;
+
+    ColorArtRequest(ColorArtDispatcher dispatcher, ColorArt.Callback callback) {
+        mDispatcher = dispatcher;
+        mCallback = callback;
+    }
+
+    /**
+     * Stops the callback from being invoked. When no other request is waiting on the
+     * same image, the analysis itself is cancelled as well.
+     * <p>
+     * Once this returns on the main thread the callback is guaranteed not to run.
+     */
+    public void cancel() {
+        if (!mCancelled) {
+            mCancelled = true;
+            mDispatcher.cancel(this);
+        }
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    void deliver(ColorArtResult result) {
+        if (!mCancelled) {
+            mCallback.onColorArtReady(result);
+        }
+    }
+
+    void fail(RuntimeException error) {
+        if (mCancelled) {
+            return;
+        }
+        if (mCallback instanceof ColorArt.FailureCallback) {
+            ((ColorArt.FailureCallback) mCallback).onColorArtFailed(error);
+        } else {
+            mCallback.onColorArtReady(FAILED_RESULT);
+        }
+    }
+}
@@ -6,11 +6,18 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.LinearGradient;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.Shader;
 import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.util.AttributeSet;
+import android.view.animation.AnimationUtils;
 import android.widget.ImageView;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Created by Michael Evans on 11/25/13.
  */
@@ -20,11 +27,65 @@ public class FadingImageView extends ImageView {
         LEFT, RIGHT, TOP, BOTTOM
     }
 
+    /**
+     * How the fade is drawn over the image.
+     */
+    public enum FadeMode {
+        /**
+         * Fills the faded third of the view with a gradient shader. This is the default.
+         */
+        SHADER,
+        /**
+         * Stretches a small pre-rendered gradient bitmap over the faded third of the view.
+         * The bitmap doesn't depend on the view size, it is only rendered again when the
+         * color or side changes.
+         */
+        BITMAP,
+        /**
+         * Draws like {@link #SHADER}, into a hardware layer on Android 3.0 and up, so the
+         * image and its fade are only redrawn when they change, not whenever the view is
+         * composited again, for instance while it scrolls.
+         */
+        HARDWARE_LAYER
+    }
+
+    private static final int SHADER_CACHE_SIZE = 32;
+    private static final int GRADIENT_LENGTH = 256;
+    private static final int MAX_KEYED_SIZE = (1 << 18) - 1;
+    private static final long NO_TRANSITION = -1;
+
+    // gradients are immutable, so views of the same size and color can share them; only
+    // touched on the main thread
+    private static final Map<Long, Shader> sShaders = new LinkedHashMap<Long, Shader>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Shader> eldest) {
+            return size() > SHADER_CACHE_SIZE;
+        }
+    };
+
     private Shader mShader;
-    private final Paint mPaint = new Paint();
+    // identifies the current shader or gradient bitmap, 0 when there is none
+    private long mShaderKey;
+    private Bitmap mGradientBitmap;
+    private final int[] mGradientPixels = new int[GRADIENT_LENGTH];
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect mFadeRect = new Rect();
     private int mBackgroundColor;
     private boolean mFadeEnabled = true;
     private FadeSide mFadeSide = FadeSide.LEFT;
+    private FadeMode mFadeMode = FadeMode.SHADER;
+    private int mLayerTypeBeforeHardware;
+
+    // color transition, only touched on the main thread
+    private long mTransitionStart = NO_TRANSITION;
+    private long mTransitionDuration;
+    private int mTransitionFrom;
+    private int mTransitionTo;
+    private int mTransitionColor;
+    // the latest requested transition, possibly set from another thread
+    private volatile boolean mHasPendingTransition;
+    private int mPendingColor;
+    private long mPendingDuration;
 
     public FadingImageView(Context context) {
         super(context);
@@ -43,32 +104,239 @@ public class FadingImageView extends ImageView {
         int g = Color.green(color);
         int b = Color.blue(color);
 
-        mBackgroundColor = Color.argb(255, r, g, b);
+        int backgroundColor = Color.argb(255, r, g, b);
+        synchronized (this) {
+            // an explicit color wins over an animation that hasn't started yet
+            mHasPendingTransition = false;
+        }
+        boolean transitioning = mTransitionStart != NO_TRANSITION;
+        int currentColor = transitioning ? mTransitionTo : mBackgroundColor;
+        if (backgroundColor == currentColor && orientation == mFadeSide) {
+            return;
+        }
+        if (transitioning) {
+            mTransitionStart = NO_TRANSITION;
+            if (mFadeMode == FadeMode.BITMAP) {
+                // the gradient bitmap still holds a frame of the transition
+                mShaderKey = 0;
+            }
+        }
+        mBackgroundColor = backgroundColor;
         mFadeSide = orientation;
+        // the color can arrive after layout when it was computed asynchronously
+        updateFade(getWidth(), getHeight());
         invalidate();
     }
 
+    /**
+     * Animates the fade from its current color to {@code color} over {@code durationMillis},
+     * for instance from a placeholder to the color of an image analyzed in the background.
+     * <p>
+     * Safe to call from any thread. Calls arriving before the next frame are coalesced into
+     * the latest one, and a transition that is still running continues from the color it had
+     * reached. Every frame only redraws the faded part of the view and allocates nothing.
+     */
+    public void animateBackgroundColor(int color, long durationMillis) {
+        synchronized (this) {
+            mPendingColor = color;
+            mPendingDuration = durationMillis;
+            mHasPendingTransition = true;
+        }
+        postInvalidate();
+    }
+
     @Override
     public void setImageBitmap(Bitmap bitmap) {
+        Drawable background = getBackground();
+        if (bitmap != null && background instanceof BitmapDrawable
+                && ((BitmapDrawable) background).getBitmap() == bitmap) {
+            // rebinding the image that is already shown
+            return;
+        }
         BitmapDrawable drawable = new BitmapDrawable(getResources(), bitmap);
         setBackgroundDrawable(drawable);
     }
 
+    /**
+     * Shows {@code bitmap} faded into {@code color} from {@code side}, like
+     * {@link #setImageBitmap} followed by {@link #setBackgroundColor(int, FadeSide)}. Meant for
+     * recycled views: whatever didn't change since the last bind is neither allocated again
+     * nor redrawn.
+     */
+    public void bind(Bitmap bitmap, int color, FadeSide side) {
+        setImageBitmap(bitmap);
+        setBackgroundColor(color, side);
+    }
+
+    public void setFadeMode(FadeMode mode) {
+        if (mode == mFadeMode) {
+            return;
+        }
+        boolean wasHardwareLayer = mFadeMode == FadeMode.HARDWARE_LAYER;
+        mFadeMode = mode;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            if (mode == FadeMode.HARDWARE_LAYER) {
+                mLayerTypeBeforeHardware = getLayerType();
+                setLayerType(LAYER_TYPE_HARDWARE, null);
+            } else if (wasHardwareLayer) {
+                // give back whatever layer type the view had before
+                setLayerType(mLayerTypeBeforeHardware, null);
+            }
+        }
+        mShader = null;
+        mShaderKey = 0;
+        mPaint.setShader(null);
+        updateFade(getWidth(), getHeight());
+        invalidate();
+    }
+
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
+        updateFade(w, h);
+    }
 
+    private void updateFade(int w, int h) {
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+        // the gradient is transparent past the faded third, there is no need to draw there
         if (mFadeSide == FadeSide.LEFT) {
-            mShader = new LinearGradient(0, h, w / 3, h, mBackgroundColor, Color.TRANSPARENT, Shader.TileMode.CLAMP);
+            mFadeRect.set(0, 0, w / 3, h);
         } else if (mFadeSide == FadeSide.RIGHT) {
-            mShader = new LinearGradient(2 * w / 3, h, w, h, Color.TRANSPARENT, mBackgroundColor, Shader.TileMode.CLAMP);
+            mFadeRect.set(2 * w / 3, 0, w, h);
         } else if (mFadeSide == FadeSide.TOP) {
-            mShader = new LinearGradient(w, 0, w, h / 3, mBackgroundColor, Color.TRANSPARENT, Shader.TileMode.CLAMP);
+            mFadeRect.set(0, 0, w, h / 3);
         } else {
-            mShader = new LinearGradient(w, 2 * h / 3, w, h, Color.TRANSPARENT, mBackgroundColor, Shader.TileMode.CLAMP);
+            mFadeRect.set(0, 2 * h / 3, w, h);
+        }
+
+        if (mFadeMode == FadeMode.BITMAP) {
+            updateGradientBitmap();
+        } else {
+            updateShader(w, h);
         }
     }
 
+    private void updateShader(int w, int h) {
+        long key = shaderKey(w, h);
+        if (key == mShaderKey) {
+            return;
+        }
+        Shader shader = sShaders.get(key);
+        if (shader == null) {
+            shader = createShader(mFadeRect);
+            sShaders.put(key, shader);
+        }
+        mShader = shader;
+        mShaderKey = key;
+        mPaint.setShader(shader);
+    }
+
+    private void updateGradientBitmap() {
+        long key = shaderKey(GRADIENT_LENGTH, 1);
+        if (key == mShaderKey) {
+            return;
+        }
+        renderGradient(mBackgroundColor);
+        mShaderKey = key;
+    }
+
+    /**
+     * Fills the gradient bitmap with a fade from {@code color} to transparent, interpolated
+     * like {@link LinearGradient} does, without allocating unless the side's orientation
+     * changed.
+     */
+    private void renderGradient(int color) {
+        boolean horizontal = mFadeSide == FadeSide.LEFT || mFadeSide == FadeSide.RIGHT;
+        int width = horizontal ? GRADIENT_LENGTH : 1;
+        int height = horizontal ? 1 : GRADIENT_LENGTH;
+        if (mGradientBitmap == null || mGradientBitmap.getWidth() != width) {
+            mGradientBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+
+        boolean reversed = mFadeSide == FadeSide.RIGHT || mFadeSide == FadeSide.BOTTOM;
+        int r = Color.red(color);
+        int g = Color.green(color);
+        int b = Color.blue(color);
+        int[] pixels = mGradientPixels;
+        for (int i = 0; i < GRADIENT_LENGTH; i++) {
+            int weight = 255 - i * 255 / (GRADIENT_LENGTH - 1);
+            pixels[reversed ? GRADIENT_LENGTH - 1 - i : i] = Color.argb(weight,
+                    r * weight / 255, g * weight / 255, b * weight / 255);
+        }
+        mGradientBitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+    }
+
+    /**
+     * Starts the latest requested transition, from wherever the fade is at now.
+     */
+    private void startPendingTransition(long now) {
+        int color;
+        long duration;
+        synchronized (this) {
+            color = mPendingColor;
+            duration = mPendingDuration;
+            mHasPendingTransition = false;
+        }
+        mTransitionFrom = mTransitionStart != NO_TRANSITION ? mTransitionColor : mBackgroundColor;
+        mTransitionColor = mTransitionFrom;
+        mTransitionStart = now;
+        mTransitionDuration = duration;
+        mTransitionTo = Color.argb(255, Color.red(color), Color.green(color), Color.blue(color));
+        if (duration <= 0) {
+            finishTransition();
+        }
+    }
+
+    private void finishTransition() {
+        mTransitionStart = NO_TRANSITION;
+        mBackgroundColor = mTransitionTo;
+        if (mFadeMode == FadeMode.BITMAP) {
+            // the gradient bitmap still holds the last frame
+            mShaderKey = 0;
+        }
+        updateFade(getWidth(), getHeight());
+    }
+
+    /**
+     * @return the color of the running transition at {@code now}
+     */
+    private int transitionColor(long now) {
+        float t = (float) (now - mTransitionStart) / mTransitionDuration;
+        // decelerate towards the new color
+        t = t * (2 - t);
+        int from = mTransitionFrom;
+        int to = mTransitionTo;
+        return Color.argb(255,
+                Color.red(from) + (int) ((Color.red(to) - Color.red(from)) * t),
+                Color.green(from) + (int) ((Color.green(to) - Color.green(from)) * t),
+                Color.blue(from) + (int) ((Color.blue(to) - Color.blue(from)) * t));
+    }
+
+    private Shader createShader(Rect fade) {
+        if (mFadeSide == FadeSide.LEFT) {
+            return new LinearGradient(fade.left, 0, fade.right, 0, mBackgroundColor, Color.TRANSPARENT, Shader.TileMode.CLAMP);
+        } else if (mFadeSide == FadeSide.RIGHT) {
+            return new LinearGradient(fade.left, 0, fade.right, 0, Color.TRANSPARENT, mBackgroundColor, Shader.TileMode.CLAMP);
+        } else if (mFadeSide == FadeSide.TOP) {
+            return new LinearGradient(0, fade.top, 0, fade.bottom, mBackgroundColor, Color.TRANSPARENT, Shader.TileMode.CLAMP);
+        } else {
+            return new LinearGradient(0, fade.top, 0, fade.bottom, Color.TRANSPARENT, mBackgroundColor, Shader.TileMode.CLAMP);
+        }
+    }
+
+    /**
+     * Packs everything a gradient depends on into one key: 18 bits per dimension, the side and
+     * the 24 color bits, the background color is always opaque.
+     */
+    private long shaderKey(int w, int h) {
+        return ((long) Math.min(w, MAX_KEYED_SIZE) << 44)
+                | ((long) Math.min(h, MAX_KEYED_SIZE) << 26)
+                | ((long) mFadeSide.ordinal() << 24)
+                | (mBackgroundColor & 0xFFFFFF);
+    }
+
     public void setFadeEnabled(boolean enabled) {
         mFadeEnabled = enabled;
         invalidate();
@@ -77,9 +345,34 @@ public class FadingImageView extends ImageView {
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        if (mShader != null && mFadeEnabled) {
-            mPaint.setShader(mShader);
-            canvas.drawPaint(mPaint);
+        if (!mFadeEnabled) {
+            return;
+        }
+        if (mHasPendingTransition || mTransitionStart != NO_TRANSITION) {
+            long now = AnimationUtils.currentAnimationTimeMillis();
+            if (mHasPendingTransition) {
+                startPendingTransition(now);
+            }
+            if (mTransitionStart != NO_TRANSITION) {
+                if (now - mTransitionStart < mTransitionDuration) {
+                    mTransitionColor = transitionColor(now);
+                    renderGradient(mTransitionColor);
+                    mPaint.setShader(null);
+                    canvas.drawBitmap(mGradientBitmap, null, mFadeRect, mPaint);
+                    mPaint.setShader(mShader);
+                    // only the faded part changes from frame to frame
+                    invalidate(mFadeRect.left, mFadeRect.top, mFadeRect.right, mFadeRect.bottom);
+                    return;
+                }
+                finishTransition();
+            }
+        }
+        if (mFadeMode == FadeMode.BITMAP) {
+            if (mShaderKey != 0) {
+                canvas.drawBitmap(mGradientBitmap, null, mFadeRect, mPaint);
+            }
+        } else if (mShader != null) {
+            canvas.drawRect(mFadeRect, mPaint);
         }
     }
 }
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Build;
+
+import java.util.Random;
+
+/**
+ * Reads a grid of sample pixels out of a bitmap into a reusable buffer, using the strategy
+ * picked in {@link ColorArt.Options}. Column 0 of the grid always comes from the left edge
+ * of the bitmap, which the edge color detection relies on.
+ */
+final class PixelSampler {
+    // a fixed seed keeps stratified results stable from one run to the next
+    private static final long SEED = 0x436f6c6f72417274L;
+
+    private final Random mRandom = new Random();
+    private int[] mPixels;
+    private int[] mRow;
+    private int mWidth;
+    private int mHeight;
+    private ColorArtMetrics mMetrics;
+
+    /**
+     * Sets where to record the time spent sampling, or null to record nothing.
+     */
+    void setMetrics(ColorArtMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    ColorArtMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    void sample(Bitmap bitmap, ColorArt.Options options) {
+        long start = startTiming();
+        switch (options.getSampling()) {
+            case STRIDE:
+                sampleStride(bitmap, options.getSampleSize());
+                endTiming(ColorArtMetrics.Stage.READ, start);
+                break;
+            case STRATIFIED:
+                sampleStratified(bitmap, options.getPixelBudget());
+                endTiming(ColorArtMetrics.Stage.READ, start);
+                break;
+            default:
+                sampleScaled(bitmap, options.getSampleSize());
+                break;
+        }
+    }
+
+    /**
+     * Reads only column 0 of the grid {@link #sample} would read, as a {@code 1 x height}
+     * grid. {@link ColorArt.Options.Sampling#SCALED} is approximated with the pixels at the
+     * centers of the scaled rows, without scaling the bitmap.
+     */
+    void sampleLeftEdge(Bitmap bitmap, ColorArt.Options options) {
+        long start = startTiming();
+        int sourceWidth = bitmap.getWidth();
+        int sourceHeight = bitmap.getHeight();
+        switch (options.getSampling()) {
+            case STRIDE:
+                setSize(1, Math.min(options.getSampleSize(), sourceHeight));
+                for (int y = 0; y < mHeight; y++) {
+                    mPixels[y] = bitmap.getPixel(0, y * sourceHeight / mHeight);
+                }
+                break;
+            case STRATIFIED:
+                int gridSize = Math.max(1, (int) Math.sqrt(options.getPixelBudget()));
+                int gridWidth = Math.min(gridSize, sourceWidth);
+                setSize(1, Math.min(gridSize, sourceHeight));
+                mRandom.setSeed(SEED);
+                for (int y = 0; y < mHeight; y++) {
+                    int top = y * sourceHeight / mHeight;
+                    mPixels[y] = bitmap.getPixel(0, top + mRandom.nextInt((y + 1) * sourceHeight / mHeight - top));
+                    // replay the rest of the row so the next rows pick the same positions
+                    for (int x = 1; x < gridWidth; x++) {
+                        mRandom.nextInt((x + 1) * sourceWidth / gridWidth - x * sourceWidth / gridWidth);
+                    }
+                }
+                break;
+            default:
+                int sampleSize = options.getSampleSize();
+                int column = Math.min(sourceWidth - 1, sourceWidth / (2 * sampleSize));
+                setSize(1, sampleSize);
+                for (int y = 0; y < mHeight; y++) {
+                    int row = Math.min(sourceHeight - 1, (2 * y + 1) * sourceHeight / (2 * sampleSize));
+                    mPixels[y] = bitmap.getPixel(column, row);
+                }
+                break;
+        }
+        endTiming(ColorArtMetrics.Stage.READ, start);
+    }
+
+    /**
+     * Samples the same grid as {@link #sample} out of an image that is too large to decode at
+     * once, decoding it a horizontal strip at a time. {@link ColorArt.Options.Sampling#SCALED}
+     * is approximated with the pixels at the centers of the scaled cells, without scaling.
+     *
+     * @param inSampleSize the subsampling to decode every strip with
+     * @param maxStripPixels the maximum number of pixels in a decoded strip
+     */
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+    void sampleRegions(BitmapRegionDecoder decoder, ColorArt.Options options, int inSampleSize,
+                       int maxStripPixels) {
+        long start = startTiming();
+        int sourceWidth = decoder.getWidth();
+        int sourceHeight = decoder.getHeight();
+        ColorArt.Options.Sampling sampling = options.getSampling();
+        int gridSize = sampling == ColorArt.Options.Sampling.STRATIFIED
+                ? Math.max(1, (int) Math.sqrt(options.getPixelBudget()))
+                : options.getSampleSize();
+        if (sampling == ColorArt.Options.Sampling.SCALED) {
+            setSize(gridSize, gridSize);
+        } else {
+            setSize(Math.min(gridSize, sourceWidth), Math.min(gridSize, sourceHeight));
+        }
+        mRandom.setSeed(SEED);
+
+        int decodedWidth = Math.max(1, sourceWidth / inSampleSize);
+        if (mRow == null || mRow.length < decodedWidth) {
+            mRow = new int[decodedWidth];
+        }
+        int stripRows = inSampleSize * Math.max(1, maxStripPixels / decodedWidth);
+
+        BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+        decodeOptions.inSampleSize = inSampleSize;
+        decodeOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Rect region = new Rect();
+        int y = 0;
+        // the rows only ever move down, so every strip is decoded at most once
+        int sourceRow = regionRow(sampling, 0, sourceHeight);
+        for (int top = 0; top < sourceHeight && y < mHeight; top += stripRows) {
+            int bottom = Math.min(sourceHeight, top + stripRows);
+            if (sourceRow >= bottom) {
+                // no sampled row falls into this strip
+                continue;
+            }
+            region.set(0, top, sourceWidth, bottom);
+            Bitmap strip = decoder.decodeRegion(region, decodeOptions);
+            if (strip == null) {
+                throw new IllegalStateException("Unable to decode rows " + top + " to " + bottom);
+            }
+
+            int stripWidth = strip.getWidth();
+            int stripHeight = strip.getHeight();
+            while (y < mHeight && sourceRow < bottom) {
+                int stripRow = Math.min(stripHeight - 1, (sourceRow - top) / inSampleSize);
+                strip.getPixels(mRow, 0, stripWidth, 0, stripRow, stripWidth, 1);
+                int rowStart = y * mWidth;
+                for (int x = 0; x < mWidth; x++) {
+                    int sourceColumn = regionColumn(sampling, x, sourceWidth);
+                    mPixels[rowStart + x] = mRow[Math.min(stripWidth - 1, sourceColumn / inSampleSize)];
+                }
+                y++;
+                if (y < mHeight) {
+                    sourceRow = regionRow(sampling, y, sourceHeight);
+                }
+            }
+            strip.recycle();
+        }
+        // decoding the strips dominates, there is no telling it apart from reading them
+        endTiming(ColorArtMetrics.Stage.DECODE, start);
+    }
+
+    /**
+     * @return the source row that row {@code y} of the grid is read from
+     */
+    private int regionRow(ColorArt.Options.Sampling sampling, int y, int sourceHeight) {
+        switch (sampling) {
+            case STRIDE:
+                return y * sourceHeight / mHeight;
+            case STRATIFIED:
+                int top = y * sourceHeight / mHeight;
+                return top + mRandom.nextInt((y + 1) * sourceHeight / mHeight - top);
+            default:
+                return Math.min(sourceHeight - 1, (2 * y + 1) * sourceHeight / (2 * mHeight));
+        }
+    }
+
+    /**
+     * @return the source column that column {@code x} of the grid is read from
+     */
+    private int regionColumn(ColorArt.Options.Sampling sampling, int x, int sourceWidth) {
+        switch (sampling) {
+            case STRIDE:
+                return x * sourceWidth / mWidth;
+            case STRATIFIED:
+                // column 0 stays on the left edge
+                int left = x * sourceWidth / mWidth;
+                return x == 0 ? 0 : left + mRandom.nextInt((x + 1) * sourceWidth / mWidth - left);
+            default:
+                return Math.min(sourceWidth - 1, (2 * x + 1) * sourceWidth / (2 * mWidth));
+        }
+    }
+
+    int[] getPixels() {
+        return mPixels;
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    private void sampleScaled(Bitmap bitmap, int sampleSize) {
+        long start = startTiming();
+        Bitmap scaledBitmap = Bitmap.createScaledBitmap(bitmap, sampleSize, sampleSize, false);
+        endTiming(ColorArtMetrics.Stage.SCALE, start);
+        start = startTiming();
+        setSize(scaledBitmap.getWidth(), scaledBitmap.getHeight());
+        // one bulk copy instead of a JNI round-trip per getPixel() call
+        scaledBitmap.getPixels(mPixels, 0, mWidth, 0, 0, mWidth, mHeight);
+        endTiming(ColorArtMetrics.Stage.READ, start);
+        if (scaledBitmap != bitmap) {
+            scaledBitmap.recycle();
+        }
+    }
+
+    /**
+     * Nearest-neighbour downsampling straight from the source rows, without allocating an
+     * intermediate bitmap.
+     */
+    private void sampleStride(Bitmap bitmap, int sampleSize) {
+        int sourceWidth = bitmap.getWidth();
+        int sourceHeight = bitmap.getHeight();
+        setSize(Math.min(sampleSize, sourceWidth), Math.min(sampleSize, sourceHeight));
+        if (mRow == null || mRow.length < sourceWidth) {
+            mRow = new int[sourceWidth];
+        }
+
+        for (int y = 0; y < mHeight; y++) {
+            bitmap.getPixels(mRow, 0, sourceWidth, 0, y * sourceHeight / mHeight, sourceWidth, 1);
+            int rowStart = y * mWidth;
+            for (int x = 0; x < mWidth; x++) {
+                mPixels[rowStart + x] = mRow[x * sourceWidth / mWidth];
+            }
+        }
+    }
+
+    /**
+     * Splits the bitmap into a grid of about {@code pixelBudget} cells and reads one pixel at
+     * a random position inside each of them, so the samples cover the whole image without
+     * lining up with regular patterns in it. Each row of cells shares one random source row,
+     * which is read with a single {@code getPixels} call.
+     */
+    private void sampleStratified(Bitmap bitmap, int pixelBudget) {
+        int sourceWidth = bitmap.getWidth();
+        int sourceHeight = bitmap.getHeight();
+        int gridSize = Math.max(1, (int) Math.sqrt(pixelBudget));
+        setSize(Math.min(gridSize, sourceWidth), Math.min(gridSize, sourceHeight));
+        if (mRow == null || mRow.length < sourceWidth) {
+            mRow = new int[sourceWidth];
+        }
+        mRandom.setSeed(SEED);
+
+        for (int y = 0; y < mHeight; y++) {
+            int top = y * sourceHeight / mHeight;
+            int cellHeight = (y + 1) * sourceHeight / mHeight - top;
+            bitmap.getPixels(mRow, 0, sourceWidth, 0, top + mRandom.nextInt(cellHeight), sourceWidth, 1);
+            int rowStart = y * mWidth;
+            // column 0 stays on the left edge
+            mPixels[rowStart] = mRow[0];
+            for (int x = 1; x < mWidth; x++) {
+                int left = x * sourceWidth / mWidth;
+                int cellWidth = (x + 1) * sourceWidth / mWidth - left;
+                mPixels[rowStart + x] = mRow[left + mRandom.nextInt(cellWidth)];
+            }
+        }
+    }
+
+    private long startTiming() {
+        return mMetrics != null ? System.nanoTime() : 0;
+    }
+
+    private void endTiming(ColorArtMetrics.Stage stage, long start) {
+        if (mMetrics != null) {
+            mMetrics.addStageNanos(stage, System.nanoTime() - start);
+        }
+    }
+
+    private void setSize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        if (mPixels == null || mPixels.length < width * height) {
+            mPixels = new int[width * height];
+        }
+    }
+}
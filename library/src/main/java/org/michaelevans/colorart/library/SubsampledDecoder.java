@@ -0,0 +1,195 @@
+/*
+ * Copyright 2013 Michael Evans <michaelcevans10@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.michaelevans.colorart.library;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.os.Build;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes encoded images just large enough for the sample grid, so analyzing a huge image
+ * never requires a full size {@link Bitmap}.
+ * <p>
+ * The bounds are read first to pick the largest power of two {@code inSampleSize} that
+ * keeps the image at least as large as the sample grid. If the subsampled image is still
+ * large, typically a very wide or very tall image, it is decoded in horizontal strips with
+ * a {@link BitmapRegionDecoder} instead, so peak memory stays bounded whatever the source
+ * resolution. The strips are sampled with the same {@link ColorArt.Options.Sampling} as a
+ * decoded bitmap would be, so the {@code inSampleSize} is sized from the same grid. Region
+ * decoding needs API 10 and only handles JPEG and PNG; older versions and other formats,
+ * such as GIF or BMP, always decode the whole subsampled image.
+ * <p>
+ * A stream is read twice, once for the bounds and once for the pixels, with
+ * {@link InputStream#mark} in between. Images whose header takes more than
+ * {@link #BOUNDS_MARK_LIMIT} bytes can't be rewound and fail with an {@link IOException},
+ * decode those with {@link ColorArt#fromFile} instead.
+ */
+final class SubsampledDecoder {
+    private static final int MAX_DECODED_PIXELS = 512 * 512;
+    private static final int MAX_STRIP_PIXELS = 256 * 1024;
+    // enough for the headers of every format BitmapFactory reads
+    private static final int BOUNDS_MARK_LIMIT = 1024 * 1024;
+
+    private SubsampledDecoder() {
+    }
+
+    static void sample(InputStream in, ColorArt.Options options, PixelSampler sampler) throws IOException {
+        InputStream stream = in.markSupported() ? in : new BufferedInputStream(in);
+        stream.mark(BOUNDS_MARK_LIMIT);
+        BitmapFactory.Options bounds = readBounds(stream);
+        rewind(stream);
+
+        int inSampleSize = inSampleSize(bounds, options);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1
+                && useRegions(bounds, inSampleSize)) {
+            stream.mark(BOUNDS_MARK_LIMIT);
+            BitmapRegionDecoder decoder = null;
+            try {
+                decoder = BitmapRegionDecoder.newInstance(stream, false);
+            } catch (IOException e) {
+                // decoded whole below
+            }
+            if (decoder != null) {
+                sampleRegions(decoder, options, inSampleSize, sampler);
+                return;
+            }
+            rewind(stream);
+        }
+        long start = startTiming(sampler);
+        Bitmap bitmap = BitmapFactory.decodeStream(stream, null, decodeOptions(inSampleSize));
+        endTiming(sampler, start);
+        sampleBitmap(bitmap, options, sampler);
+    }
+
+    static void sample(File file, ColorArt.Options options, PixelSampler sampler) throws IOException {
+        InputStream boundsStream = new FileInputStream(file);
+        BitmapFactory.Options bounds;
+        try {
+            bounds = readBounds(boundsStream);
+        } finally {
+            boundsStream.close();
+        }
+
+        int inSampleSize = inSampleSize(bounds, options);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1
+                && useRegions(bounds, inSampleSize)) {
+            BitmapRegionDecoder decoder = null;
+            try {
+                decoder = BitmapRegionDecoder.newInstance(file.getPath(), false);
+            } catch (IOException e) {
+                // decoded whole below
+            }
+            if (decoder != null) {
+                sampleRegions(decoder, options, inSampleSize, sampler);
+                return;
+            }
+        }
+        long start = startTiming(sampler);
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), decodeOptions(inSampleSize));
+        endTiming(sampler, start);
+        sampleBitmap(bitmap, options, sampler);
+    }
+
+    private static void rewind(InputStream stream) throws IOException {
+        try {
+            stream.reset();
+        } catch (IOException e) {
+            IOException rewindFailure = new IOException(
+                    "Unable to rewind the stream, more than " + BOUNDS_MARK_LIMIT + " bytes were read");
+            // IOException(String, Throwable) needs API 9
+            rewindFailure.initCause(e);
+            throw rewindFailure;
+        }
+    }
+
+    private static BitmapFactory.Options readBounds(InputStream stream) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeStream(stream, null, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Unable to read the image bounds");
+        }
+        return bounds;
+    }
+
+    private static int inSampleSize(BitmapFactory.Options bounds, ColorArt.Options options) {
+        int target = options.getSampling() == ColorArt.Options.Sampling.STRATIFIED
+                ? Math.max(1, (int) Math.sqrt(options.getPixelBudget()))
+                : options.getSampleSize();
+        int smallerSide = Math.min(bounds.outWidth, bounds.outHeight);
+        int inSampleSize = 1;
+        while (smallerSide / (inSampleSize * 2) >= target) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    private static boolean useRegions(BitmapFactory.Options bounds, int inSampleSize) {
+        long decodedPixels = (long) (bounds.outWidth / inSampleSize) * (bounds.outHeight / inSampleSize);
+        // the region decoder may only reject other formats after reading the whole stream
+        return decodedPixels > MAX_DECODED_PIXELS
+                && ("image/jpeg".equals(bounds.outMimeType) || "image/png".equals(bounds.outMimeType));
+    }
+
+    private static BitmapFactory.Options decodeOptions(int inSampleSize) {
+        BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+        decodeOptions.inSampleSize = inSampleSize;
+        decodeOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        return decodeOptions;
+    }
+
+    private static long startTiming(PixelSampler sampler) {
+        return sampler.getMetrics() != null ? System.nanoTime() : 0;
+    }
+
+    private static void endTiming(PixelSampler sampler, long start) {
+        ColorArtMetrics metrics = sampler.getMetrics();
+        if (metrics != null) {
+            metrics.addStageNanos(ColorArtMetrics.Stage.DECODE, System.nanoTime() - start);
+        }
+    }
+
+    private static void sampleBitmap(Bitmap bitmap, ColorArt.Options options, PixelSampler sampler)
+            throws IOException {
+        if (bitmap == null) {
+            throw new IOException("Unable to decode the image");
+        }
+        try {
+            sampler.sample(bitmap, options);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+    private static void sampleRegions(BitmapRegionDecoder decoder, ColorArt.Options options,
+                                      int inSampleSize, PixelSampler sampler) throws IOException {
+        try {
+            sampler.sampleRegions(decoder, options, inSampleSize, MAX_STRIP_PIXELS);
+        } finally {
+            decoder.recycle();
+        }
+    }
+}